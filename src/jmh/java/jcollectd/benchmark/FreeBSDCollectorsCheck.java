@@ -0,0 +1,122 @@
+package jcollectd.benchmark;
+
+import jcollectd.common.dto.sample.*;
+import jcollectd.engine.collector.ProcessRunner;
+import jcollectd.engine.collector.builder.FreeBSDCollectorBuilder;
+import jcollectd.engine.collector.callable.Collector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static jcollectd.common.dto.sample.CoresRawSample.*;
+
+// collectors of FreeBSD against outputs recorded from a FreeBSD host, commands are replaced by a stub runner so they can be verified on any system
+// run with: java -cp target/jcollectd.jar jcollectd.benchmark.FreeBSDCollectorsCheck
+public class FreeBSDCollectorsCheck {
+
+    private static final List<String> FIXTURES = List.of("sysctl", "netstat", "iostat", "swapinfo");
+
+    private final Map<String, List<String>> outputs = new HashMap<>();
+    private final Map<String, Integer> calls = new TreeMap<>();
+    private final List<List<String>> commands = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        new FreeBSDCollectorsCheck().run();
+        System.out.println("All checks passed");
+    }
+
+    private FreeBSDCollectorsCheck() throws IOException {
+        for (String fixture : FIXTURES) {
+            try (InputStream is = FreeBSDCollectorsCheck.class.getResourceAsStream("/freebsd/" + fixture)) {
+                outputs.put(fixture, new BufferedReader(new InputStreamReader(is, StandardCharsets.US_ASCII)).lines().toList());
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        // output of each command is the recorded one, whatever the arguments
+        ProcessRunner runner = args -> {
+            commands.add(args);
+            calls.merge(args.getFirst(), 1, Integer::sum);
+            return outputs.get(args.getFirst());
+        };
+        var builder = new FreeBSDCollectorBuilder(runner);
+        Collector load = builder.buildLoadCollector();
+        Collector cpu = builder.buildCpuCollector();
+        Collector cores = builder.buildCoresCollector();
+        Collector mem = builder.buildMemCollector();
+        Collector ix0 = builder.buildNetCollector("ix0");
+        Collector re1 = builder.buildNetCollector("re1");
+        Collector tun0 = builder.buildNetCollector("tun0");
+        Collector lanUplink = builder.buildNetCollector("lan uplink");
+        Collector wg0 = builder.buildNetCollector("wg0:vpn");
+        Collector ix1 = builder.buildNetCollector("ix1");
+        Collector mirror = builder.buildDiskCollector("ada0+ada1");
+        Collector nvd0 = builder.buildDiskCollector("nvd0");
+        Collector da9 = builder.buildDiskCollector("da9");
+        Collector zroot = builder.buildZfsCollector("zroot");
+
+        // two cycles, each one spawning every command once, however many probes need it
+        for (int cycle = 1; cycle <= 2; cycle++) {
+            builder.snapshot();
+            check("load", load.call(), new LoadRawSample(new BigDecimal("0.21"), new BigDecimal("0.22"), new BigDecimal("0.17")));
+            check("cpu", cpu.call(), new CpuRawSample(10552628L, 10075772L));
+            CoresRawSample c = (CoresRawSample) cores.call();
+            check("cores", c.getCores(), 8);
+            check("cpu0", Arrays.copyOfRange(c.getTimes(), 0, FIELDS), core(52445, 485, 6943, 454, 1285319));
+            check("cpu7", Arrays.copyOfRange(c.getTimes(), 7 * FIELDS, 8 * FIELDS), core(61993, 25, 9244, 97, 1272963));
+            // unknown oid of page cache counted as zero, two swap devices and their total line
+            check("mem", mem.call(), new MemRawSample(4054841720L, 27319539336L, 18874368L));
+            check("ix0", ix0.call(), new NetRawSample("ix0", 359184917448L, 446709191018L));
+            check("re1", re1.call(), new NetRawSample("re1", 0, 0));
+            check("tun0", tun0.call(), new NetRawSample("tun0", 70119843L, 9871420L));
+            check("lan uplink", lanUplink.call(), new NetRawSample("lan uplink", 102845519023L, 19233016610L));
+            check("wg0:vpn", wg0.call(), new NetRawSample("wg0:vpn", 1732203342L, 311293044L));
+            check("ix1", ix1.call(), new NetRawSample("ix1", 0, 0));
+            check("ada0+ada1", mirror.call(), new DiskRawSample("ada0+ada1", 12093450749440L, 244151304192L));
+            check("nvd0", nvd0.call(), new DiskRawSample("nvd0", 414448735949L, 1559942164582L));
+            check("da9", da9.call(), new DiskRawSample("da9", 0, 0));
+            check("zroot", zroot.call(), new DiskRawSample("zroot", 42021289892L, 1966071913L));
+            check("calls", calls, Map.of("iostat", cycle, "netstat", cycle, "swapinfo", cycle, "sysctl", cycle));
+        }
+        check("sysctl", commands.stream().filter(c -> c.getFirst().equals("sysctl")).findFirst().orElseThrow().containsAll(List.of("kern.cp_time", "kern.cp_times", "vm.loadavg", "kstat.zfs.zroot.dataset")), true);
+        check("iostat", commands.stream().filter(c -> c.getFirst().equals("iostat")).findFirst().orElseThrow(), List.of("iostat", "-Ix", "ada0", "ada1", "nvd0", "da9"));
+
+        // oids every system has are not made up when missing
+        outputs.put("sysctl", outputs.get("sysctl").stream().filter(l -> !l.startsWith("kern.cp_time:")).toList());
+        builder.snapshot();
+        try {
+            cpu.call();
+            throw new IllegalStateException("cpu: missing kern.cp_time not reported");
+        } catch (IOException ex) {
+            check("cpu", ex.getMessage(), "Unknown sysctl oid kern.cp_time");
+        }
+        check("cores", ((CoresRawSample) cores.call()).getCores(), 8);
+    }
+
+    private static long[] core(long user, long nice, long system, long irq, long idle) {
+        long[] ret = new long[FIELDS];
+        ret[USER] = user;
+        ret[NICE] = nice;
+        ret[SYSTEM] = system;
+        ret[IRQ] = irq;
+        ret[IDLE] = idle;
+        return ret;
+    }
+
+    private static void check(String what, Object actual, Object expected) {
+        if (!Objects.deepEquals(actual, expected)) {
+            throw new IllegalStateException(String.format("%s: expected %s, got %s", what, format(expected), format(actual)));
+        }
+    }
+
+    private static String format(Object value) {
+        return value instanceof long[] a ? Arrays.toString(a) : String.valueOf(value);
+    }
+
+}
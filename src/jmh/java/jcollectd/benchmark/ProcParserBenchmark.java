@@ -0,0 +1,227 @@
+package jcollectd.benchmark;
+
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.common.dto.sample.CoresRawSample;
+import jcollectd.common.dto.sample.CpuRawSample;
+import jcollectd.common.dto.sample.DiskRawSample;
+import jcollectd.common.dto.sample.MemRawSample;
+import jcollectd.common.dto.sample.NetRawSample;
+import jcollectd.engine.collector.DeviceSnapshot;
+import jcollectd.engine.collector.callable.LinuxCoresCollector;
+import jcollectd.engine.collector.callable.LinuxCpuCollector;
+import jcollectd.engine.collector.callable.LinuxDiskCollector;
+import jcollectd.engine.collector.callable.LinuxMemCollector;
+import jcollectd.engine.collector.callable.LinuxNetCollector;
+import jcollectd.engine.mapper.CoresSampleMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// parsers of collectors against the previous line based ones, on copies of /proc files recorded from a host with many devices
+// run with: java -cp target/jcollectd.jar org.openjdk.jmh.Main ProcParserBenchmark -prof gc
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcParserBenchmark {
+
+    private static final List<String> FIXTURES = List.of("stat", "stat_256", "meminfo", "net_dev", "diskstats");
+    private static final Path MISSING = Path.of("/nonexistent");
+
+    private Path dir;
+    private LinuxCpuCollector cpuCollector;
+    // a host with 256 cores, and two consecutive samples of it
+    private LinuxCoresCollector coresCollector;
+    private CoresRawSample prevCores;
+    private CoresRawSample curCores;
+    private LinuxMemCollector memCollector;
+    private DeviceSnapshot netDev;
+    private DeviceSnapshot diskstats;
+    private LinuxNetCollector netCollector;
+    private LinuxDiskCollector diskCollector;
+    // one probe for each whole disk of the recorded host
+    private List<LinuxDiskCollector> diskCollectors;
+    private List<String> disks;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // fixtures are bundled as resources, files are needed to be read as /proc ones are
+        dir = Files.createTempDirectory("jcollectd-jmh");
+        for (String fixture : FIXTURES) {
+            try (InputStream is = ProcParserBenchmark.class.getResourceAsStream("/proc/" + fixture)) {
+                Files.copy(is, dir.resolve(fixture));
+            }
+        }
+        cpuCollector = new LinuxCpuCollector(dir.resolve("stat"));
+        coresCollector = new LinuxCoresCollector(dir.resolve("stat_256"));
+        prevCores = coresCollector.call();
+        long[] times = prevCores.getTimes().clone();
+        for (int i = 0; i < times.length; i++) {
+            times[i] += i % 13 * 10;
+        }
+        curCores = new CoresRawSample(times);
+        memCollector = new LinuxMemCollector(dir.resolve("meminfo"), MISSING);
+        netDev = LinuxNetCollector.newSnapshot(dir.resolve("net_dev"));
+        netCollector = new LinuxNetCollector("veth2b3c4d5", netDev);
+        diskstats = LinuxDiskCollector.newSnapshot(dir.resolve("diskstats"));
+        diskCollector = new LinuxDiskCollector("sdx+nvme7n1+dm-47", diskstats);
+        disks = Files.readAllLines(dir.resolve("diskstats")).stream()
+                .map(l -> l.trim().split("\\s+")[2])
+                .filter(d -> d.matches("^(sd[a-z]|nvme\\dn\\d)$"))
+                .toList();
+        diskCollectors = disks.stream().map(d -> new LinuxDiskCollector(d, diskstats)).toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public CpuRawSample cpu() throws Exception {
+        return cpuCollector.call();
+    }
+
+    @Benchmark
+    public CpuRawSample cpuLegacy() throws Exception {
+        try (BufferedReader br = new BufferedReader(new FileReader(dir.resolve("stat").toFile()))) {
+            String[] split = br.readLine().trim().split("\\s+");
+            long totalTime = Arrays.stream(split).skip(1).mapToLong(Long::parseLong).sum();
+            long idleTime = Long.parseLong(split[4]) + Long.parseLong(split[5]);
+            return new CpuRawSample(totalTime, idleTime);
+        }
+    }
+
+    @Benchmark
+    public CoresRawSample cores() throws Exception {
+        return coresCollector.call();
+    }
+
+    @Benchmark
+    public ComputedSample coresMapping() {
+        return new CoresSampleMapper().map(Instant.EPOCH, curCores, Instant.EPOCH, prevCores);
+    }
+
+    @Benchmark
+    public MemRawSample mem() throws Exception {
+        return memCollector.call();
+    }
+
+    @Benchmark
+    public MemRawSample memLegacy() throws Exception {
+        try (BufferedReader br = new BufferedReader(new FileReader(dir.resolve("meminfo").toFile()))) {
+            long memTotal = 0, memAvailable = 0, buffers = 0, cached = 0, sReclaimable = 0, swapTotal = 0, swapFree = 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("MemTotal")) {
+                    memTotal = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                } else if (line.startsWith("MemAvailable")) {
+                    memAvailable = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                } else if (line.startsWith("Buffers")) {
+                    buffers = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                } else if (line.startsWith("Cached")) {
+                    cached = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                } else if (line.startsWith("SReclaimable")) {
+                    sReclaimable = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                } else if (line.startsWith("SwapTotal")) {
+                    swapTotal = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                } else if (line.startsWith("SwapFree")) {
+                    swapFree = Long.parseLong(line.split("\\s+")[1]) * 1024L;
+                }
+            }
+            return new MemRawSample(memTotal - memAvailable, cached + buffers + sReclaimable, swapTotal - swapFree);
+        }
+    }
+
+    @Benchmark
+    public NetRawSample net() throws Exception {
+        netDev.read();
+        return netCollector.call();
+    }
+
+    @Benchmark
+    public NetRawSample netLegacy() throws Exception {
+        String device = "veth2b3c4d5";
+        try (BufferedReader br = new BufferedReader(new FileReader(dir.resolve("net_dev").toFile()))) {
+            long rx = 0, tx = 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (!line.startsWith(device)) {
+                    continue;
+                }
+                String[] split = line.trim().split("\\s+");
+                rx = Long.parseLong(split[1]);
+                tx = Long.parseLong(split[9]);
+                break;
+            }
+            return new NetRawSample(device, rx, tx);
+        }
+    }
+
+    @Benchmark
+    public DiskRawSample disk() throws Exception {
+        diskstats.read();
+        return diskCollector.call();
+    }
+
+    @Benchmark
+    public DiskRawSample diskLegacy() throws Exception {
+        return diskLegacy("sdx+nvme7n1+dm-47");
+    }
+
+    // a cycle of all disk probes, the file is read once for all of them
+    @Benchmark
+    public long diskProbes() throws Exception {
+        diskstats.read();
+        long ret = 0;
+        for (LinuxDiskCollector collector : diskCollectors) {
+            ret += collector.call().getRead();
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public long diskProbesLegacy() throws Exception {
+        long ret = 0;
+        for (String disk : disks) {
+            ret += diskLegacy(disk).getRead();
+        }
+        return ret;
+    }
+
+    private DiskRawSample diskLegacy(String device) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(dir.resolve("diskstats").toFile()))) {
+            List<String> devices = List.of(device.split("\\+"));
+            long read = 0, write = 0;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] split = line.trim().split("\\s+");
+                if (!devices.contains(split[2])) {
+                    continue;
+                }
+                read += Long.parseLong(split[5]) * 512L;
+                write += Long.parseLong(split[9]) * 512L;
+            }
+            return new DiskRawSample(device, read, write);
+        }
+    }
+
+}
@@ -13,6 +13,11 @@ public class AppConfig {
     private final Duration interval;
     private final Duration retention;
     private final int port;
+    private final int compressionLevel;
+    private final StoreType store;
+    private final int persistQueueSize;
+    private final OverflowPolicy persistQueueOverflow;
     private final List<Probe> probes;
+    private final List<Rollup> rollups;
 
 }
@@ -14,7 +14,12 @@ public class AppConfigMapping {
     private String interval;
     private String retention;
     private String port;
+    private String compressionLevel;
+    private String store;
+    private String persistQueueSize;
+    private String persistQueueOverflow;
     private List<ProbeMapping> probes;
+    private List<RollupMapping> rollups;
 
     @Data
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -27,4 +32,13 @@ public class AppConfigMapping {
 
     }
 
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RollupMapping {
+
+        private String resolution;
+        private String retention;
+
+    }
+
 }
@@ -0,0 +1,16 @@
+package jcollectd.common.dto.config;
+
+import java.util.Arrays;
+
+public enum OverflowPolicy {
+    BLOCK,
+    DROP_OLDEST,
+    DROP_NEWEST;
+
+    public static OverflowPolicy of(String s) {
+        if (s == null) {
+            return null;
+        }
+        return Arrays.stream(values()).filter(i -> i.name().equalsIgnoreCase(s.trim().replace('-', '_'))).findFirst().orElse(null);
+    }
+}
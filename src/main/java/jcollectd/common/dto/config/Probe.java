@@ -26,7 +26,7 @@ public class Probe {
 
     public String prettyPrint() {
         return switch (type) {
-            case LOAD, CPU, MEM, GPU -> String.format("type: %s, size: %s", type, size);
+            case LOAD, CPU, CORES, MEM, GPU, SELF -> String.format("type: %s, size: %s", type, size);
             case NET, DISK, ZFS -> String.format("type: %s, size: %s, device: %s, label: %s", type, size, device, label);
         };
     }
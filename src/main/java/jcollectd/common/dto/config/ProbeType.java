@@ -5,11 +5,13 @@ import java.util.Arrays;
 public enum ProbeType {
     LOAD,
     CPU,
+    CORES,
     MEM,
     NET,
     DISK,
     ZFS,
-    GPU;
+    GPU,
+    SELF;
 
     public static ProbeType of(String s) {
         if (s == null) {
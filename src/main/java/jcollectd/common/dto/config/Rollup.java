@@ -0,0 +1,13 @@
+package jcollectd.common.dto.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+public class Rollup {
+
+    private final Duration resolution;
+    private final Duration retention;
+
+}
@@ -0,0 +1,15 @@
+package jcollectd.common.dto.config;
+
+import java.util.Arrays;
+
+public enum StoreType {
+    SQLITE,
+    MAPPED;
+
+    public static StoreType of(String s) {
+        if (s == null) {
+            return null;
+        }
+        return Arrays.stream(values()).filter(i -> i.name().equalsIgnoreCase(s.trim())).findFirst().orElse(null);
+    }
+}
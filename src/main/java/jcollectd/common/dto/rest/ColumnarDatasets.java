@@ -0,0 +1,29 @@
+package jcollectd.common.dto.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ColumnarDatasets {
+
+    // number of samples of each grid
+    private final int[] sizes;
+    // epoch seconds of each grid, shared by all datasets sampled at the same instants, omitted in binary format
+    private final List<long[]> grids;
+    private final List<Dataset> datasets;
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Dataset {
+
+        private final int grid;
+        private final int width;
+        // one array for each value, omitted in binary format
+        private final List<double[]> columns;
+
+    }
+
+}
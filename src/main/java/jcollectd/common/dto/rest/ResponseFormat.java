@@ -0,0 +1,19 @@
+package jcollectd.common.dto.rest;
+
+import java.util.Arrays;
+
+public enum ResponseFormat {
+    // one array of [timestamp, values...] for each sample
+    JSON,
+    // one shared timestamp vector for each sampling grid, then one array for each value column
+    COLUMNAR,
+    // same layout of columnar format, with vectors as little-endian doubles after a json header
+    BINARY;
+
+    public static ResponseFormat of(String s) {
+        if (s == null) {
+            return null;
+        }
+        return Arrays.stream(values()).filter(i -> i.name().equalsIgnoreCase(s.trim())).findFirst().orElse(null);
+    }
+}
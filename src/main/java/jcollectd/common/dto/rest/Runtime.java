@@ -1,5 +1,6 @@
 package jcollectd.common.dto.rest;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jcollectd.common.dto.config.Probe;
 import lombok.Data;
 
@@ -16,6 +17,16 @@ public class Runtime {
     private final String collectElapsed;
     private final String persistElapsed;
     private final String reportElapsed;
+    private final Integer persistQueueDepth;
+    private final Long persistDroppedCycles;
+    // latest cycle already visible when datasets were read, to be passed as since parameter to only get newer samples
+    private final Instant lastTms;
+    // samples not newer than this fell out of retention window, and must be discarded
+    private final Instant retentionTms;
+    // samples are either in row format or in columnar format, depending on the requested one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private final List<List<Object[]>> datasets;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final ColumnarDatasets columnar;
 
 }
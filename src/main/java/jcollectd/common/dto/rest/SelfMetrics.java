@@ -0,0 +1,30 @@
+package jcollectd.common.dto.rest;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+public class SelfMetrics {
+
+    private final Instant startTms;
+    // distribution of each instrumented operation since startup, in milliseconds
+    private final Map<String, Latency> latencies;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+
+    @Data
+    public static class Latency {
+
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package jcollectd.common.dto.sample;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class CoresComputedSample extends ComputedSample {
+
+    // percentages of user, system, iowait and steal time for each core
+    public static final int METRICS = 4;
+
+    private final Instant sampleTms;
+    // values of all cores in a single array, one core after the other
+    private final double[] usage;
+
+}
@@ -0,0 +1,27 @@
+package jcollectd.common.dto.sample;
+
+import lombok.Data;
+
+@Data
+public class CoresRawSample extends RawSample {
+
+    // position of each time among the ones of a core
+    public static final int USER = 0;
+    public static final int NICE = 1;
+    public static final int SYSTEM = 2;
+    public static final int IDLE = 3;
+    public static final int IOWAIT = 4;
+    public static final int IRQ = 5;
+    public static final int SOFTIRQ = 6;
+    public static final int STEAL = 7;
+    public static final int FIELDS = 8;
+
+    // times of all cores in a single array, one core after the other, so no object is created for each core
+    // cores offline are left to zero, as well as times not reported by the operating system
+    private final long[] times;
+
+    public int getCores() {
+        return times.length / FIELDS;
+    }
+
+}
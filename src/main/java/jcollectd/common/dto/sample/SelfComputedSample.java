@@ -0,0 +1,15 @@
+package jcollectd.common.dto.sample;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+public class SelfComputedSample extends ComputedSample {
+
+    private final Instant sampleTms;
+    private final BigDecimal collect;
+    private final BigDecimal persist;
+
+}
@@ -0,0 +1,11 @@
+package jcollectd.common.dto.sample;
+
+import lombok.Data;
+
+@Data
+public class SelfRawSample extends RawSample {
+
+    private final long collectElapsed;
+    private final long persistElapsed;
+
+}
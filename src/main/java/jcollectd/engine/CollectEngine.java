@@ -2,22 +2,25 @@ package jcollectd.engine;
 
 import jcollectd.common.ExceptionUtils;
 import jcollectd.common.dto.config.AppConfig;
+import jcollectd.common.dto.config.Probe;
 import jcollectd.common.dto.sample.*;
 import jcollectd.common.exception.CollectException;
 import jcollectd.engine.collector.builder.CollectorBuilder;
 import jcollectd.engine.collector.builder.FreeBSDCollectorBuilder;
 import jcollectd.engine.collector.builder.LinuxCollectorBuilder;
 import jcollectd.engine.collector.callable.Collector;
+import jcollectd.engine.collector.callable.SelfCollector;
 import jcollectd.engine.mapper.*;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 
-import java.sql.SQLException;
+import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
@@ -32,7 +35,15 @@ public class CollectEngine {
     // configuration
     private final AppConfig config;
     private final long interval;
+    private final CollectorBuilder collectorBuilder;
     private final List<Collector> collectors;
+    private final PersistEngine persistEngine;
+    private final SeriesCache seriesCache;
+    private final MetricsRegistry registry;
+    // latency of each collector, in the same order
+    private final List<LatencyHistogram> collectorLatencies;
+    @Getter
+    private final MetricsSnapshot metricsSnapshot;
 
     // results
     @Getter
@@ -42,14 +53,16 @@ public class CollectEngine {
     // timings
     @Getter
     private volatile Long collectElapsed;
-    @Getter
-    private volatile Long persistElapsed;
 
-    public CollectEngine(AppConfig config) {
+    public CollectEngine(AppConfig config, PersistEngine persistEngine, SeriesCache seriesCache, MetricsRegistry registry) throws IOException, InterruptedException {
         this.config = config;
+        this.persistEngine = persistEngine;
+        this.seriesCache = seriesCache;
+        this.registry = registry;
+        this.metricsSnapshot = new MetricsSnapshot(config.getProbes());
         interval = config.getInterval().toMillis();
 
-        CollectorBuilder collectorBuilder = switch (config.getOs()) {
+        collectorBuilder = switch (config.getOs()) {
             case LINUX -> new LinuxCollectorBuilder();
             case FREEBSD -> new FreeBSDCollectorBuilder();
         };
@@ -59,13 +72,16 @@ public class CollectEngine {
             switch (probe.getType()) {
                 case LOAD -> collectors.add(collectorBuilder.buildLoadCollector());
                 case CPU -> collectors.add(collectorBuilder.buildCpuCollector());
+                case CORES -> collectors.add(collectorBuilder.buildCoresCollector());
                 case MEM -> collectors.add(collectorBuilder.buildMemCollector());
                 case NET -> collectors.add(collectorBuilder.buildNetCollector(probe.getDevice()));
                 case DISK -> collectors.add(collectorBuilder.buildDiskCollector(probe.getDevice()));
                 case ZFS -> collectors.add(collectorBuilder.buildZfsCollector(probe.getDevice()));
                 case GPU -> collectors.add(collectorBuilder.buildGpuCollector());
+                case SELF -> collectors.add(new SelfCollector(registry));
             }
         }
+        collectorLatencies = config.getProbes().stream().map(p -> registry.histogram(getMetricName(p))).toList();
     }
 
     public void run() throws CollectException {
@@ -81,9 +97,11 @@ public class CollectEngine {
 
                 // starting collectors
                 long startTime = System.nanoTime();
+                snapshot();
                 List<Future<RawSample>> futures = runCollectors();
                 List<RawSample> rawSamples = getResults(futures);
                 collectElapsed = System.nanoTime() - startTime;
+                registry.histogram(MetricsRegistry.COLLECT).record(collectElapsed);
                 log.debug("Collecting time: {}", smartElapsed(collectElapsed));
 
                 // moving observation window
@@ -94,13 +112,16 @@ public class CollectEngine {
                 }
 
                 // mapping raw samples into computed samples, eventually comparing with previous result
+                startTime = System.nanoTime();
                 List<ComputedSample> computedSamples = mapSamples();
+                registry.histogram(MetricsRegistry.MAP).record(System.nanoTime() - startTime);
 
-                // persisting samples
-                startTime = System.nanoTime();
-                persistSamples(computedSamples);
-                persistElapsed = System.nanoTime() - startTime;
-                log.debug("Persisting time: {}", smartElapsed(persistElapsed));
+                // samples are immediately available to web engine from memory
+                seriesCache.append(computedSamples);
+                metricsSnapshot.update(collectTms, rawSamples, computedSamples);
+
+                // handing samples over to persist engine, collection never waits for storage unless queue is full
+                persistEngine.submit(computedSamples, collectTms);
             } catch (InterruptedException ex) {
                 log.info("Received KILL signal, shutting down");
                 Thread.currentThread().interrupt();
@@ -109,12 +130,40 @@ public class CollectEngine {
         }
     }
 
+    private void snapshot() throws InterruptedException {
+        long startTime = System.nanoTime();
+        try {
+            collectorBuilder.snapshot();
+        } catch (IOException | RuntimeException ex) {
+            log.error("Reading shared system information failed: {}", ExceptionUtils.getCanonicalForm(ex));
+            throw new CollectException();
+        }
+        registry.histogram(MetricsRegistry.SNAPSHOT).record(System.nanoTime() - startTime);
+    }
+
     private List<Future<RawSample>> runCollectors() throws InterruptedException {
+        List<Callable<RawSample>> tasks = new ArrayList<>(collectors.size());
+        for (int i = 0; i < collectors.size(); i++) {
+            Collector collector = collectors.get(i);
+            LatencyHistogram latency = collectorLatencies.get(i);
+            tasks.add(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    return collector.call();
+                } finally {
+                    latency.record(System.nanoTime() - startTime);
+                }
+            });
+        }
         try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
-            return executor.invokeAll(collectors);
+            return executor.invokeAll(tasks);
         }
     }
 
+    private static String getMetricName(Probe probe) {
+        return MetricsRegistry.COLLECT + "." + probe.getType().name().toLowerCase() + (probe.getDevice() != null ? "." + probe.getDevice() : "");
+    }
+
     private List<RawSample> getResults(List<Future<RawSample>> futures) {
         ArrayList<RawSample> ret = new ArrayList<>(config.getProbes().size());
         boolean failures = false;
@@ -142,10 +191,12 @@ public class CollectEngine {
                 switch (config.getProbes().get(i).getType()) {
                     case LOAD -> ret.add(new LoadSampleMapper().map(curResult.getCollectTms(), (LoadRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (LoadRawSample) prevResult.getRawSamples().get(i)));
                     case CPU -> ret.add(new CpuSampleMapper().map(curResult.getCollectTms(), (CpuRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (CpuRawSample) prevResult.getRawSamples().get(i)));
+                    case CORES -> ret.add(new CoresSampleMapper().map(curResult.getCollectTms(), (CoresRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (CoresRawSample) prevResult.getRawSamples().get(i)));
                     case MEM -> ret.add(new MemSampleMapper().map(curResult.getCollectTms(), (MemRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (MemRawSample) prevResult.getRawSamples().get(i)));
                     case NET -> ret.add(new NetSampleMapper().map(curResult.getCollectTms(), (NetRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (NetRawSample) prevResult.getRawSamples().get(i)));
                     case DISK, ZFS -> ret.add(new DiskSampleMapper().map(curResult.getCollectTms(), (DiskRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (DiskRawSample) prevResult.getRawSamples().get(i)));
                     case GPU -> ret.add(new GpuSampleMapper().map(curResult.getCollectTms(), (GpuRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (GpuRawSample) prevResult.getRawSamples().get(i)));
+                    case SELF -> ret.add(new SelfSampleMapper().map(curResult.getCollectTms(), (SelfRawSample) curResult.getRawSamples().get(i), prevResult.getCollectTms(), (SelfRawSample) prevResult.getRawSamples().get(i)));
                 }
             } catch (Exception ex) {
                 log.error("Mapping data from collector #{} failed: {}", i, ExceptionUtils.getCanonicalForm(ex));
@@ -156,14 +207,4 @@ public class CollectEngine {
         return ret;
     }
 
-    private void persistSamples(List<ComputedSample> samples) {
-        try (var service = new SqliteService()) {
-            service.initializeDatabase();
-            service.persistSamples(samples, curResult.getCollectTms(), curResult.getCollectTms().minus(config.getRetention()));
-        } catch (SQLException ex) {
-            log.error("Persisting data failed: {}", ExceptionUtils.getCanonicalFormWithStackTrace(ex));
-            throw new CollectException();
-        }
-    }
-
 }
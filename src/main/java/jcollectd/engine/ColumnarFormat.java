@@ -0,0 +1,85 @@
+package jcollectd.engine;
+
+import jcollectd.common.dto.rest.ColumnarDatasets;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// column oriented layout of datasets: timestamps are sent once for each sampling grid, values as plain numeric vectors
+// binary layout: header length (int), json header, padding to 8 bytes, then every grid and every column of every dataset as doubles, all little-endian
+public class ColumnarFormat {
+
+    private ColumnarFormat() {
+    }
+
+    public static ColumnarDatasets of(List<List<Object[]>> datasets) {
+        List<long[]> grids = new ArrayList<>();
+        List<ColumnarDatasets.Dataset> ret = new ArrayList<>(datasets.size());
+        for (List<Object[]> rows : datasets) {
+            long[] timestamps = new long[rows.size()];
+            // rows per core could be narrower than the latest ones, if cores came online in the middle of the window
+            int width = rows.stream().mapToInt(r -> r.length - 1).max().orElse(0);
+            List<double[]> columns = new ArrayList<>(width);
+            for (int i = 0; i < width; i++) {
+                columns.add(new double[rows.size()]);
+            }
+            for (int n = 0; n < rows.size(); n++) {
+                Object[] row = rows.get(n);
+                timestamps[n] = ((Instant) row[0]).getEpochSecond();
+                for (int i = 0; i < width; i++) {
+                    columns.get(i)[n] = i + 1 < row.length ? ((Number) row[i + 1]).doubleValue() : 0;
+                }
+            }
+
+            // probes are sampled in the same cycles, so most of the times they share exactly the same timestamps
+            int grid = 0;
+            while (grid < grids.size() && !Arrays.equals(grids.get(grid), timestamps)) {
+                grid++;
+            }
+            if (grid == grids.size()) {
+                grids.add(timestamps);
+            }
+            ret.add(new ColumnarDatasets.Dataset(grid, width, columns));
+        }
+        return new ColumnarDatasets(grids.stream().mapToInt(g -> g.length).toArray(), grids, ret);
+    }
+
+    // same structure, without vectors, to be used as header of binary format
+    public static ColumnarDatasets withoutVectors(ColumnarDatasets columnar) {
+        return new ColumnarDatasets(columnar.getSizes(), null,
+                columnar.getDatasets().stream().map(d -> new ColumnarDatasets.Dataset(d.getGrid(), d.getWidth(), null)).toList());
+    }
+
+    public static byte[] toBinary(byte[] header, ColumnarDatasets columnar) {
+        // vectors are aligned to 8 bytes, so clients can map typed arrays straight onto the payload
+        int offset = align(Integer.BYTES + header.length);
+        int values = Arrays.stream(columnar.getSizes()).sum();
+        for (var dataset : columnar.getDatasets()) {
+            values += dataset.getWidth() * columnar.getSizes()[dataset.getGrid()];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(offset + values * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(header.length).put(header).position(offset);
+        for (long[] grid : columnar.getGrids()) {
+            for (long timestamp : grid) {
+                buffer.putDouble(timestamp);
+            }
+        }
+        for (var dataset : columnar.getDatasets()) {
+            for (double[] column : dataset.getColumns()) {
+                for (double value : column) {
+                    buffer.putDouble(value);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    private static int align(int offset) {
+        return (offset + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+}
@@ -13,7 +13,9 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static jcollectd.common.CommonUtils.YAML_OBJECT_MAPPER;
 import static jcollectd.common.CommonUtils.isEmpty;
@@ -90,6 +92,46 @@ public class ConfigurationParser {
         }).orElse(8080);
         log.info("Listening on port: {}", port);
 
+        int compressionLevel = Optional.ofNullable(configMapping.getCompressionLevel()).map(s -> {
+            try {
+                return Integer.parseUnsignedInt(s);
+            } catch (NumberFormatException ex) {
+                throw new ConfigurationException("Field compressionLevel is not a valid number");
+            }
+        }).orElse(6);
+        if (compressionLevel > 9) {
+            throw new ConfigurationException("Field compressionLevel must be between 0 and 9");
+        }
+        log.info("Response compression level: {}", compressionLevel);
+
+        StoreType store = Optional.ofNullable(configMapping.getStore()).map(s -> {
+            StoreType type = StoreType.of(s);
+            if (type == null) {
+                throw new ConfigurationException(String.format("Field store has invalid value '%s'", s));
+            }
+            return type;
+        }).orElse(StoreType.SQLITE);
+        log.info("Sample store: {}", store);
+
+        int persistQueueSize = Optional.ofNullable(configMapping.getPersistQueueSize()).map(s -> {
+            try {
+                return Integer.parseUnsignedInt(s);
+            } catch (NumberFormatException ex) {
+                throw new ConfigurationException("Field persistQueueSize is not a valid number");
+            }
+        }).orElse(100);
+        if (persistQueueSize < 1) {
+            throw new ConfigurationException("Field persistQueueSize must be greater than zero");
+        }
+        OverflowPolicy persistQueueOverflow = Optional.ofNullable(configMapping.getPersistQueueOverflow()).map(s -> {
+            OverflowPolicy policy = OverflowPolicy.of(s);
+            if (policy == null) {
+                throw new ConfigurationException(String.format("Field persistQueueOverflow has invalid value '%s'", s));
+            }
+            return policy;
+        }).orElse(OverflowPolicy.BLOCK);
+        log.info("Persist queue size: {}, overflow policy: {}", persistQueueSize, persistQueueOverflow);
+
         if (configMapping.getProbes() == null || configMapping.getProbes().isEmpty()) {
             throw new ConfigurationException("No probe defined");
         }
@@ -125,7 +167,7 @@ public class ConfigurationParser {
             }
 
             Probe probe = switch (type) {
-                case LOAD, CPU, MEM, GPU -> new Probe(type, size);
+                case LOAD, CPU, CORES, MEM, GPU, SELF -> new Probe(type, size);
                 case NET, DISK, ZFS -> new Probe(type, size, probeMapping.getDevice().trim(), isEmpty(probeMapping.getLabel()) ? probeMapping.getDevice().trim() : probeMapping.getLabel().trim());
             };
             if (probes.stream().anyMatch(p -> p.getType() == probe.getType() && (p.getDevice() == null && probe.getDevice() == null) || (p.getDevice() != null && p.getDevice().equals(probe.getDevice())))) {
@@ -135,7 +177,44 @@ public class ConfigurationParser {
             log.info("Probe #{}: {}", i + 1, probe.prettyPrint());
         }
 
-        return new AppConfig(os, hostname, interval, retention, port, probes);
+        List<Rollup> rollups;
+        if (configMapping.getRollups() == null) {
+            // by default, keep coarser series for the whole retention window, skipping the ones not coarser than sampling interval
+            rollups = Stream.of(Duration.ofMinutes(1), Duration.ofMinutes(15), Duration.ofHours(1))
+                    .filter(r -> r.compareTo(interval) > 0)
+                    .map(r -> new Rollup(r, retention))
+                    .toList();
+        } else {
+            rollups = new ArrayList<>(configMapping.getRollups().size());
+            for (int i = 0; i < configMapping.getRollups().size(); i++) {
+                var rollupMapping = configMapping.getRollups().get(i);
+                if (isEmpty(rollupMapping.getResolution())) {
+                    throw new ConfigurationException(String.format("Rollup #%s: 'resolution' parameter is mandatory", i + 1));
+                }
+                Duration resolution;
+                try {
+                    resolution = Duration.parse(rollupMapping.getResolution().trim());
+                } catch (DateTimeParseException ex) {
+                    throw new ConfigurationException(String.format("Rollup #%s: 'resolution' is not a valid duration", i + 1));
+                }
+                if (resolution.compareTo(interval) <= 0 || resolution.getNano() != 0) {
+                    throw new ConfigurationException(String.format("Rollup #%s: 'resolution' must be a whole number of seconds greater than sampling interval", i + 1));
+                }
+                Duration rollupRetention;
+                try {
+                    rollupRetention = isEmpty(rollupMapping.getRetention()) ? retention : Duration.parse(rollupMapping.getRetention().trim());
+                } catch (DateTimeParseException ex) {
+                    throw new ConfigurationException(String.format("Rollup #%s: 'retention' is not a valid duration", i + 1));
+                }
+                if (rollups.stream().anyMatch(r -> r.getResolution().equals(resolution))) {
+                    throw new ConfigurationException(String.format("Rollup #%s has duplicate definition", i + 1));
+                }
+                rollups.add(new Rollup(resolution, rollupRetention));
+            }
+        }
+        rollups.forEach(r -> log.info("Rollup resolution: {}, retention: {}", r.getResolution(), r.getRetention()));
+
+        return new AppConfig(os, hostname, interval, retention, port, compressionLevel, store, persistQueueSize, persistQueueOverflow, probes, rollups);
     }
 
 }
@@ -0,0 +1,79 @@
+package jcollectd.engine;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// largest triangle three buckets, as described by Sveinn Steinarsson: keeps the shape of the series, spikes included, with a bounded number of points
+public class Downsampler {
+
+    private Downsampler() {
+    }
+
+    public static List<Object[]> lttb(List<Object[]> rows, int maxPoints) {
+        int size = rows.size();
+        if (size <= maxPoints || maxPoints < 3) {
+            return rows;
+        }
+
+        // rows are made of timestamp followed by values, converted once to primitives
+        int columns = rows.getFirst().length - 1;
+        double[] x = new double[size];
+        double[][] y = new double[columns][size];
+        for (int n = 0; n < size; n++) {
+            Object[] row = rows.get(n);
+            x[n] = ((Instant) row[0]).getEpochSecond();
+            for (int i = 0; i < columns; i++) {
+                y[i][n] = ((Number) row[i + 1]).doubleValue();
+            }
+        }
+
+        // first and last points are always kept, the others are split into buckets of the same size
+        List<Object[]> ret = new ArrayList<>(maxPoints);
+        ret.add(rows.getFirst());
+        double every = (double) (size - 2) / (maxPoints - 2);
+        double[] avgY = new double[columns];
+        int selected = 0;
+        for (int b = 0; b < maxPoints - 2; b++) {
+            // average point of next bucket is the third vertex of the triangle
+            int nextStart = (int) Math.floor((b + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((b + 2) * every) + 1, size);
+            double avgX = 0;
+            for (int i = 0; i < columns; i++) {
+                avgY[i] = 0;
+            }
+            for (int n = nextStart; n < nextEnd; n++) {
+                avgX += x[n];
+                for (int i = 0; i < columns; i++) {
+                    avgY[i] += y[i][n];
+                }
+            }
+            int nextCount = nextEnd - nextStart;
+            avgX /= nextCount;
+            for (int i = 0; i < columns; i++) {
+                avgY[i] /= nextCount;
+            }
+
+            // point of current bucket forming the largest triangle with the previously selected one, summed over all values
+            int start = (int) Math.floor(b * every) + 1;
+            int end = nextStart;
+            double maxArea = -1;
+            int candidate = start;
+            for (int n = start; n < end; n++) {
+                double area = 0;
+                for (int i = 0; i < columns; i++) {
+                    area += Math.abs((x[selected] - avgX) * (y[i][n] - y[i][selected]) - (x[selected] - x[n]) * (avgY[i] - y[i][selected]));
+                }
+                if (area > maxArea) {
+                    maxArea = area;
+                    candidate = n;
+                }
+            }
+            ret.add(rows.get(candidate));
+            selected = candidate;
+        }
+        ret.add(rows.getLast());
+        return ret;
+    }
+
+}
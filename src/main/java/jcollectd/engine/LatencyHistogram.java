@@ -0,0 +1,90 @@
+package jcollectd.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// log-linear histogram of nanoseconds, as in HdrHistogram: every power of two is split into the same number of linear buckets,
+// so relative precision is constant (about 3%) from nanoseconds to minutes, with a fixed footprint and lock-free recording
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    // longer latencies (about 18 minutes) are recorded as the maximum trackable value
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = getIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private volatile long last;
+
+    public void record(long nanos) {
+        long value = Math.clamp(nanos, 0, MAX_VALUE);
+        counts.incrementAndGet(getIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+        last = value;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public Summary getSummary() {
+        // buckets are read one at a time while others could be recording, so totals are taken from buckets themselves
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0, 0);
+        }
+        // bucket midpoints could exceed the exact maximum
+        long highest = max.get();
+        return new Summary(total, sum.sum() / Math.max(count.sum(), 1),
+                Math.min(getPercentile(snapshot, total, 0.5), highest), Math.min(getPercentile(snapshot, total, 0.9), highest),
+                Math.min(getPercentile(snapshot, total, 0.99), highest), Math.min(getPercentile(snapshot, total, 0.999), highest),
+                highest);
+    }
+
+    private static long getPercentile(long[] snapshot, long total, double percentile) {
+        long rank = Math.max((long) Math.ceil(total * percentile), 1);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return getMedianValue(i);
+            }
+        }
+        return getMedianValue(snapshot.length - 1);
+    }
+
+    // small values are indexed linearly, then each power of two takes half of the sub-buckets, indexed by its most significant bits
+    private static int getIndex(long value) {
+        int shift = Math.max(63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1), 0);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long getLowestValue(int index) {
+        int shift = Math.max(index / HALF_SUB_BUCKETS - 1, 0);
+        return (long) (index - shift * HALF_SUB_BUCKETS) << shift;
+    }
+
+    private static long getHighestValue(int index) {
+        return getLowestValue(index + 1) - 1;
+    }
+
+    private static long getMedianValue(int index) {
+        return (getLowestValue(index) + getHighestValue(index)) / 2;
+    }
+
+    // all values in nanoseconds
+    public record Summary(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+    }
+
+}
@@ -0,0 +1,91 @@
+package jcollectd.engine;
+
+import jcollectd.common.ExceptionUtils;
+import jcollectd.common.dto.rest.SelfMetrics;
+import lombok.extern.log4j.Log4j2;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// internal metrics of the daemon itself, to see where time goes and to measure the effect of changes
+@Log4j2
+public class MetricsRegistry {
+
+    public static final String COLLECT = "collect";
+    public static final String SNAPSHOT = "collect.snapshot";
+    public static final String MAP = "map";
+    public static final String PERSIST = "persist";
+    public static final String PERSISTED_VALUES = "persist.values";
+    public static final String PERSISTED_CYCLES = "persist.cycles";
+    public static final String STORE_SIZE = "store.size_bytes";
+
+    private final Instant startTms = Instant.now();
+    // sorted by name, so related metrics are listed together
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public MetricsRegistry() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm.heap.used_bytes", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm.heap.committed_bytes", () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm.nonheap.used_bytes", () -> memory.getNonHeapMemoryUsage().getUsed());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = gc.getName().toLowerCase().replace(' ', '_');
+            gauge("jvm.gc." + name + ".count", gc::getCollectionCount);
+            gauge("jvm.gc." + name + ".time_ms", gc::getCollectionTime);
+        }
+        gauge("jvm.threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, _ -> new LatencyHistogram());
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, _ -> new LongAdder());
+    }
+
+    // gauges are only read when metrics are requested
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public SelfMetrics getSnapshot() {
+        Map<String, SelfMetrics.Latency> latencies = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> {
+            LatencyHistogram.Summary s = histogram.getSummary();
+            latencies.put(name, new SelfMetrics.Latency(s.count(), toMillis(s.mean()), toMillis(s.p50()), toMillis(s.p90()), toMillis(s.p99()), toMillis(s.p999()), toMillis(s.max())));
+        });
+        Map<String, Long> counterValues = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        Map<String, Long> gaugeValues = new LinkedHashMap<>();
+        gauges.forEach((name, gauge) -> {
+            try {
+                gaugeValues.put(name, gauge.get());
+            } catch (Exception ex) {
+                // a single unreadable gauge shouldn't prevent reporting the others
+                log.warn("Reading gauge {} failed: {}", name, ExceptionUtils.getCanonicalForm(ex));
+            }
+        });
+        return new SelfMetrics(startTms, latencies, counterValues, gaugeValues);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    @FunctionalInterface
+    public interface Gauge {
+
+        long get() throws Exception;
+
+    }
+
+}
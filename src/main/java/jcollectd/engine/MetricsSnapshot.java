@@ -0,0 +1,235 @@
+package jcollectd.engine;
+
+import jcollectd.common.dto.config.Probe;
+import jcollectd.common.dto.config.ProbeType;
+import jcollectd.common.dto.sample.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// latest samples in openmetrics text format, rendered once per cycle by the collect thread, so scrapes only have to send the bytes
+public class MetricsSnapshot {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    // labels of each metric of a core, in the same order as computed samples
+    private static final List<String> CORE_MODES = List.of("user", "system", "iowait", "steal");
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // probes of each type, in configuration order, metrics of the same device are only exposed once
+    private final Map<ProbeType, int[]> probeIndexes = new EnumMap<>(ProbeType.class);
+    private final List<Probe> probes;
+    // only used by the collect thread, reused across cycles and encoded while written, scrapes get an exact copy
+    private byte[] buffer = new byte[4096];
+    private int length;
+    private volatile byte[] exposition = "# EOF\n".getBytes(StandardCharsets.UTF_8);
+
+    public MetricsSnapshot(List<Probe> probes) {
+        this.probes = probes;
+        for (ProbeType type : ProbeType.values()) {
+            Set<String> devices = new HashSet<>();
+            probeIndexes.put(type, IntStream.range(0, probes.size())
+                    .filter(i -> probes.get(i).getType() == type && devices.add(String.valueOf(probes.get(i).getDevice())))
+                    .toArray());
+        }
+    }
+
+    public byte[] getExposition() {
+        return exposition;
+    }
+
+    public void update(Instant collectTms, List<RawSample> rawSamples, List<ComputedSample> computedSamples) {
+        length = 0;
+        family("jcollectd_last_collect_timestamp_seconds", "gauge", "Time of the latest collect cycle.");
+        sample("jcollectd_last_collect_timestamp_seconds", null, collectTms.getEpochSecond());
+
+        // samples of every family must be contiguous, so probes are iterated once for each family
+        int[] indexes = probeIndexes.get(ProbeType.LOAD);
+        if (indexes.length > 0) {
+            family("jcollectd_load_average", "gauge", "System load average.");
+            for (int i : indexes) {
+                LoadComputedSample s = (LoadComputedSample) computedSamples.get(i);
+                append("jcollectd_load_average{period=\"1m\"} ").append(s.getLoad1().toPlainString()).append('\n');
+                append("jcollectd_load_average{period=\"5m\"} ").append(s.getLoad5().toPlainString()).append('\n');
+                append("jcollectd_load_average{period=\"15m\"} ").append(s.getLoad15().toPlainString()).append('\n');
+            }
+        }
+
+        indexes = probeIndexes.get(ProbeType.CPU);
+        if (indexes.length > 0) {
+            family("jcollectd_cpu_usage_ratio", "gauge", "CPU usage across all cores.");
+            for (int i : indexes) {
+                sample("jcollectd_cpu_usage_ratio", null, ((CpuComputedSample) computedSamples.get(i)).getLoad().movePointLeft(2));
+            }
+        }
+
+        indexes = probeIndexes.get(ProbeType.CORES);
+        if (indexes.length > 0) {
+            // one series for each mode of each core, percentages have one decimal, so ratios are exact with three
+            family("jcollectd_core_usage_ratio", "gauge", "Usage of each core, by mode.");
+            for (int i : indexes) {
+                double[] usage = ((CoresComputedSample) computedSamples.get(i)).getUsage();
+                for (int j = 0; j < usage.length; j++) {
+                    append("jcollectd_core_usage_ratio{core=\"").append(j / CORE_MODES.size()).append("\",mode=\"").append(CORE_MODES.get(j % CORE_MODES.size())).append("\"} ");
+                    append(Math.round(usage[j] * 10), 3).append('\n');
+                }
+            }
+        }
+
+        indexes = probeIndexes.get(ProbeType.MEM);
+        if (indexes.length > 0) {
+            // raw samples are exact, computed ones are rounded to MiB
+            family("jcollectd_memory_used_bytes", "gauge", "Memory in use by applications.");
+            for (int i : indexes) {
+                sample("jcollectd_memory_used_bytes", null, ((MemRawSample) rawSamples.get(i)).getMem());
+            }
+            family("jcollectd_memory_cache_bytes", "gauge", "Memory in use by caches.");
+            for (int i : indexes) {
+                sample("jcollectd_memory_cache_bytes", null, ((MemRawSample) rawSamples.get(i)).getCache());
+            }
+            family("jcollectd_swap_used_bytes", "gauge", "Swap space in use.");
+            for (int i : indexes) {
+                sample("jcollectd_swap_used_bytes", null, ((MemRawSample) rawSamples.get(i)).getSwap());
+            }
+        }
+
+        indexes = probeIndexes.get(ProbeType.NET);
+        if (indexes.length > 0) {
+            // traffic is only exposed as counters, rates of computed samples are rounded while rate() of counters is exact
+            family("jcollectd_network_receive_bytes", "counter", "Bytes received by the interface.");
+            for (int i : indexes) {
+                sample("jcollectd_network_receive_bytes_total", probes.get(i).getDevice(), ((NetRawSample) rawSamples.get(i)).getRx());
+            }
+            family("jcollectd_network_transmit_bytes", "counter", "Bytes transmitted by the interface.");
+            for (int i : indexes) {
+                sample("jcollectd_network_transmit_bytes_total", probes.get(i).getDevice(), ((NetRawSample) rawSamples.get(i)).getTx());
+            }
+        }
+
+        disk("disk", probeIndexes.get(ProbeType.DISK), rawSamples);
+        disk("zfs", probeIndexes.get(ProbeType.ZFS), rawSamples);
+
+        indexes = probeIndexes.get(ProbeType.GPU);
+        if (indexes.length > 0) {
+            family("jcollectd_gpu_usage_ratio", "gauge", "GPU usage.");
+            for (int i : indexes) {
+                sample("jcollectd_gpu_usage_ratio", null, ((GpuComputedSample) computedSamples.get(i)).getLoad().movePointLeft(2));
+            }
+        }
+
+        indexes = probeIndexes.get(ProbeType.SELF);
+        if (indexes.length > 0) {
+            // raw samples are exact nanoseconds, computed ones are rounded to hundredths of milliseconds
+            family("jcollectd_collect_duration_seconds", "gauge", "Duration of the previous collect cycle.");
+            for (int i : indexes) {
+                labels("jcollectd_collect_duration_seconds", null).append(((SelfRawSample) rawSamples.get(i)).getCollectElapsed(), 9).append('\n');
+            }
+            family("jcollectd_persist_duration_seconds", "gauge", "Duration of the latest write to the store.");
+            for (int i : indexes) {
+                labels("jcollectd_persist_duration_seconds", null).append(((SelfRawSample) rawSamples.get(i)).getPersistElapsed(), 9).append('\n');
+            }
+        }
+
+        append("# EOF\n");
+        exposition = Arrays.copyOf(buffer, length);
+    }
+
+    private void disk(String prefix, int[] indexes, List<RawSample> rawSamples) {
+        if (indexes.length == 0) {
+            return;
+        }
+        family("jcollectd_" + prefix + "_read_bytes", "counter", "Bytes read from the device.");
+        for (int i : indexes) {
+            sample("jcollectd_" + prefix + "_read_bytes_total", probes.get(i).getDevice(), ((DiskRawSample) rawSamples.get(i)).getRead());
+        }
+        family("jcollectd_" + prefix + "_written_bytes", "counter", "Bytes written to the device.");
+        for (int i : indexes) {
+            sample("jcollectd_" + prefix + "_written_bytes_total", probes.get(i).getDevice(), ((DiskRawSample) rawSamples.get(i)).getWrite());
+        }
+    }
+
+    private void family(String name, String type, String help) {
+        append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        append("# HELP ").append(name).append(' ').append(help).append('\n');
+    }
+
+    private void sample(String name, String device, long value) {
+        labels(name, device).append(value).append('\n');
+    }
+
+    private void sample(String name, String device, BigDecimal value) {
+        labels(name, device).append(value.toPlainString()).append('\n');
+    }
+
+    private MetricsSnapshot labels(String name, String device) {
+        append(name);
+        if (device != null) {
+            // names without chars to escape are appended as they are
+            append("{device=\"").append(device.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append("\"}");
+        }
+        return append(' ');
+    }
+
+    private MetricsSnapshot append(String value) {
+        // only device names could be outside ASCII, they're the only ones encoded to a new array
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                byte[] bytes = value.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, buffer, length, bytes.length);
+                length += bytes.length;
+                return this;
+            }
+            buffer[length++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    private MetricsSnapshot append(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+        return this;
+    }
+
+    private MetricsSnapshot append(long value) {
+        return append(value, 0);
+    }
+
+    private MetricsSnapshot append(long unscaled, int scale) {
+        // digits are written right to left straight into the buffer, with given number of them after the decimal point
+        if (unscaled < 0) {
+            return append(BigDecimal.valueOf(unscaled, scale).toPlainString());
+        }
+        int digits = 1;
+        for (long n = unscaled; n >= 10; n /= 10) {
+            digits++;
+        }
+        int end = length + Math.max(digits, scale + 1) + (scale > 0 ? 1 : 0);
+        ensureCapacity(end - length);
+        for (int i = end - 1; i >= length; i--) {
+            if (i == end - 1 - scale && scale > 0) {
+                buffer[i] = '.';
+                continue;
+            }
+            buffer[i] = (byte) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+        length = end;
+        return this;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (length + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+
+}
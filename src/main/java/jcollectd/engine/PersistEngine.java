@@ -0,0 +1,160 @@
+package jcollectd.engine;
+
+import jcollectd.common.ExceptionUtils;
+import jcollectd.common.dto.config.AppConfig;
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.common.exception.CollectException;
+import jcollectd.engine.store.SampleStore;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jcollectd.common.CommonUtils.smartElapsed;
+
+@Log4j2
+public class PersistEngine implements AutoCloseable {
+
+    // maximum number of cycles committed in the same transaction when writer falls behind
+    private static final int MAX_GROUP_SIZE = 60;
+    // queued by close after every pending request, writer exits once it's reached
+    private static final PersistRequest STOP = new PersistRequest(List.of(), null);
+
+    private final AppConfig config;
+    private final SampleStore store;
+    private final MetricsRegistry registry;
+    private final BlockingQueue<PersistRequest> queue;
+    private final Thread writerThread;
+    private volatile boolean failed = false;
+
+    // timings and metrics
+    @Getter
+    private volatile Long persistElapsed;
+    @Getter
+    private volatile int lastGroupSize;
+    private final AtomicLong droppedCycles = new AtomicLong();
+
+    public PersistEngine(AppConfig config, SampleStore store, MetricsRegistry registry) {
+        this.config = config;
+        this.store = store;
+        this.registry = registry;
+        queue = new ArrayBlockingQueue<>(config.getPersistQueueSize());
+        writerThread = Thread.ofPlatform().name("persist-engine").unstarted(this::run);
+    }
+
+    public void start() {
+        writerThread.start();
+    }
+
+    public void submit(List<ComputedSample> samples, Instant collectTms) throws InterruptedException {
+        if (failed) {
+            throw new CollectException();
+        }
+        PersistRequest request = new PersistRequest(samples, collectTms);
+        switch (config.getPersistQueueOverflow()) {
+            case BLOCK -> {
+                while (!queue.offer(request, 1, TimeUnit.SECONDS)) {
+                    if (failed) {
+                        throw new CollectException();
+                    }
+                }
+            }
+            case DROP_OLDEST -> {
+                while (!queue.offer(request)) {
+                    if (queue.poll() != null) {
+                        droppedCycles.incrementAndGet();
+                        log.warn("Persist queue is full, oldest pending samples dropped");
+                    }
+                }
+            }
+            case DROP_NEWEST -> {
+                if (!queue.offer(request)) {
+                    droppedCycles.incrementAndGet();
+                    log.warn("Persist queue is full, newest samples dropped");
+                }
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedCycles() {
+        return droppedCycles.get();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        // caller could be shutting down because interrupted itself, flag is cleared to wait for writer and then restored
+        boolean interrupted = Thread.interrupted();
+        try {
+            // writer is never interrupted, an interrupted write could close files of the store and lose what is still pending,
+            // it's woken by the stop marker instead, and flushes everything queued before it
+            while (writerThread.isAlive() && !queue.offer(STOP, 1, TimeUnit.SECONDS)) {
+                // queue is full, writer is still draining it
+            }
+            writerThread.join();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        List<PersistRequest> group = new ArrayList<>(MAX_GROUP_SIZE);
+        boolean stopping = false;
+        while (true) {
+            try {
+                if (!stopping) {
+                    group.add(queue.take());
+                }
+            } catch (InterruptedException ex) {
+                // not expected, anyway treated like a stop, pending requests are drained below
+                stopping = true;
+            }
+            queue.drainTo(group, MAX_GROUP_SIZE - group.size());
+            // nothing is submitted once closing, so stop marker is always the last request
+            stopping |= group.removeIf(r -> r == STOP);
+            if (group.isEmpty()) {
+                if (stopping) {
+                    return;
+                }
+                continue;
+            }
+
+            // all the cycles pending are committed together, expiring samples relative to the most recent one
+            List<ComputedSample> samples = new ArrayList<>();
+            group.forEach(r -> samples.addAll(r.samples()));
+            Instant collectTms = group.getLast().collectTms();
+
+            long startTime = System.nanoTime();
+            try {
+                store.persistSamples(samples, collectTms, collectTms.minus(config.getRetention()));
+            } catch (Exception ex) {
+                log.error("Persisting data failed: {}", ExceptionUtils.getCanonicalFormWithStackTrace(ex));
+                failed = true;
+                return;
+            }
+            persistElapsed = System.nanoTime() - startTime;
+            lastGroupSize = group.size();
+            registry.histogram(MetricsRegistry.PERSIST).record(persistElapsed);
+            registry.counter(MetricsRegistry.PERSISTED_CYCLES).add(group.size());
+            // one value for each metric of each sample
+            registry.counter(MetricsRegistry.PERSISTED_VALUES).add(samples.stream().mapToLong(s -> SampleTable.getValues(s).length).sum());
+            log.debug("Persisting time: {}, cycles: {}, pending: {}", smartElapsed(persistElapsed), group.size(), queue.size());
+            group.clear();
+        }
+    }
+
+    private record PersistRequest(List<ComputedSample> samples, Instant collectTms) {
+    }
+
+}
@@ -0,0 +1,100 @@
+package jcollectd.engine;
+
+import jcollectd.common.dto.rest.ResponseFormat;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// responses only change once per collect cycle, so they're built once and shared by every client asking the same thing until next cycle
+public class ResponseCache {
+
+    // request parameters are chosen by clients, entries beyond this limit are built but not kept
+    private static final int MAX_ENTRIES = 64;
+
+    private final Map<Key, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    // most recent cycle requested so far, only entries of older cycles are evicted
+    private final AtomicReference<Instant> newestTms = new AtomicReference<>();
+
+    public Entry get(Instant cycleTms, String since, String maxPoints, ResponseFormat format, Supplier<byte[]> builder) {
+        Key key = new Key(cycleTms, since, maxPoints, format);
+        CompletableFuture<Entry> future = entries.get(key);
+        if (future == null) {
+            // requests still finishing against a previous cycle are neither kept nor allowed to evict entries of the current one
+            Instant newest = newestTms.accumulateAndGet(cycleTms, (a, b) -> isOlder(a, b) ? b : a);
+            if (isOlder(cycleTms, newest)) {
+                return new Entry(cycleTms, builder.get());
+            }
+            if (entries.size() >= MAX_ENTRIES) {
+                evictOlderThan(cycleTms);
+                if (entries.size() >= MAX_ENTRIES) {
+                    return new Entry(cycleTms, builder.get());
+                }
+            }
+            // concurrent misses wait for the first one to build the response, instead of building it again
+            CompletableFuture<Entry> created = new CompletableFuture<>();
+            future = entries.putIfAbsent(key, created);
+            if (future == null) {
+                // entries of previous cycles are no longer requested
+                evictOlderThan(cycleTms);
+                try {
+                    created.complete(new Entry(cycleTms, builder.get()));
+                } catch (RuntimeException ex) {
+                    entries.remove(key);
+                    created.completeExceptionally(ex);
+                    throw ex;
+                }
+                return created.join();
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException re ? re : ex;
+        }
+    }
+
+    private void evictOlderThan(Instant cycleTms) {
+        entries.keySet().removeIf(k -> isOlder(k.cycleTms, cycleTms));
+    }
+
+    private static boolean isOlder(Instant a, Instant b) {
+        // no cycle at all comes before the first one
+        return b != null && (a == null || a.isBefore(b));
+    }
+
+    private record Key(Instant cycleTms, String since, String maxPoints, ResponseFormat format) {
+    }
+
+    public static class Entry {
+
+        private final Instant cycleTms;
+        private final byte[] body;
+        // compressed variants are built on first request, once for each encoding
+        private final Map<String, byte[]> encoded = new ConcurrentHashMap<>();
+
+        private Entry(Instant cycleTms, byte[] body) {
+            this.cycleTms = cycleTms;
+            this.body = body;
+        }
+
+        public Instant getCycleTms() {
+            return cycleTms;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public byte[] getBody(String encoding, Function<byte[], byte[]> encoder) {
+            return encoded.computeIfAbsent(encoding, _ -> encoder.apply(body));
+        }
+
+    }
+
+}
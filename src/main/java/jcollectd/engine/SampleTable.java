@@ -0,0 +1,143 @@
+package jcollectd.engine;
+
+import jcollectd.common.dto.config.ProbeType;
+import jcollectd.common.dto.sample.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@AllArgsConstructor
+@Getter
+public enum SampleTable {
+    LOAD("tb_load_sample", false, List.of("load1", "load5", "load15"), "REAL"),
+    CPU("tb_cpu_sample", false, List.of("load"), "REAL"),
+    // columns are repeated for each core of the host
+    CORES("tb_cores_sample", false, List.of("user", "system", "iowait", "steal"), "REAL"),
+    MEM("tb_mem_sample", false, List.of("mem", "cache", "swap"), "INTEGER"),
+    NET("tb_net_sample", true, List.of("rx", "tx"), "REAL"),
+    DISK("tb_disk_sample", true, List.of("read", "write"), "REAL"),
+    GPU("tb_gpu_sample", false, List.of("load"), "REAL"),
+    SELF("tb_self_sample", false, List.of("collect", "persist"), "REAL");
+
+    private final String tableName;
+    private final boolean withDevice;
+    private final List<String> columns;
+    private final String columnType;
+
+    private static final Pattern CORE_METRIC_PATTERN = Pattern.compile("^cpu(\\d+)\\.([a-z]+)$");
+
+    public static SampleTable of(ProbeType type) {
+        return switch (type) {
+            case LOAD -> LOAD;
+            case CPU -> CPU;
+            case CORES -> CORES;
+            case MEM -> MEM;
+            case NET -> NET;
+            case DISK, ZFS -> DISK;
+            case GPU -> GPU;
+            case SELF -> SELF;
+        };
+    }
+
+    public static SampleTable of(ComputedSample sample) {
+        return switch (sample) {
+            case LoadComputedSample _ -> LOAD;
+            case CpuComputedSample _ -> CPU;
+            case CoresComputedSample _ -> CORES;
+            case MemComputedSample _ -> MEM;
+            case NetComputedSample _ -> NET;
+            case DiskComputedSample _ -> DISK;
+            case GpuComputedSample _ -> GPU;
+            case SelfComputedSample _ -> SELF;
+            default -> throw new IllegalArgumentException("Unsupported sample type: " + sample.getClass().getSimpleName());
+        };
+    }
+
+    public static Instant getSampleTms(ComputedSample sample) {
+        return switch (sample) {
+            case LoadComputedSample s -> s.getSampleTms();
+            case CpuComputedSample s -> s.getSampleTms();
+            case CoresComputedSample s -> s.getSampleTms();
+            case MemComputedSample s -> s.getSampleTms();
+            case NetComputedSample s -> s.getSampleTms();
+            case DiskComputedSample s -> s.getSampleTms();
+            case GpuComputedSample s -> s.getSampleTms();
+            case SelfComputedSample s -> s.getSampleTms();
+            default -> throw new IllegalArgumentException("Unsupported sample type: " + sample.getClass().getSimpleName());
+        };
+    }
+
+    public static String getDevice(ComputedSample sample) {
+        return switch (sample) {
+            case NetComputedSample s -> s.getDevice();
+            case DiskComputedSample s -> s.getDevice();
+            default -> null;
+        };
+    }
+
+    public static double[] getValues(ComputedSample sample) {
+        return switch (sample) {
+            case LoadComputedSample s -> toValues(s.getLoad1(), s.getLoad5(), s.getLoad15());
+            case CpuComputedSample s -> toValues(s.getLoad());
+            // already primitive, copying thousands of values for each cycle would be a waste
+            case CoresComputedSample s -> s.getUsage();
+            case MemComputedSample s -> toValues(s.getMem(), s.getCache(), s.getSwap());
+            case NetComputedSample s -> toValues(s.getRx(), s.getTx());
+            case DiskComputedSample s -> toValues(s.getRead(), s.getWrite());
+            case GpuComputedSample s -> toValues(s.getLoad());
+            case SelfComputedSample s -> toValues(s.getCollect(), s.getPersist());
+            default -> throw new IllegalArgumentException("Unsupported sample type: " + sample.getClass().getSimpleName());
+        };
+    }
+
+    private static double[] toValues(Number... numbers) {
+        double[] ret = new double[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            ret[i] = numbers[i].doubleValue();
+        }
+        return ret;
+    }
+
+    // tables as wide as the number of cores, only known once sampled
+    public boolean isPerCore() {
+        return this == CORES;
+    }
+
+    // name of the metric of each value, values of all cores are one core after the other
+    public String getMetric(int idx) {
+        return isPerCore() ? "cpu" + idx / columns.size() + "." + columns.get(idx % columns.size()) : columns.get(idx);
+    }
+
+    // position of the value of given metric, or -1 if unknown
+    public int getMetricIndex(String metric) {
+        if (!isPerCore()) {
+            return columns.indexOf(metric);
+        }
+        Matcher m = CORE_METRIC_PATTERN.matcher(metric);
+        return m.matches() && columns.contains(m.group(2)) ? Integer.parseInt(m.group(1)) * columns.size() + columns.indexOf(m.group(2)) : -1;
+    }
+
+    public String getRollupName(Duration resolution) {
+        return tableName.replace("_sample", "_rollup_" + resolution.getSeconds());
+    }
+
+    public Object[] toRow(long sampleTms, double[] values) {
+        Object[] row = new Object[values.length + 1];
+        row[0] = Instant.ofEpochSecond(sampleTms);
+        for (int i = 0; i < values.length; i++) {
+            row[i + 1] = columnType.equals("INTEGER") ? (Object) Math.round(values[i]) : (Object) values[i];
+        }
+        // network received and disk written are drawn below the axis
+        switch (this) {
+            case NET -> row[1] = -values[0];
+            case DISK -> row[2] = -values[1];
+        }
+        return row;
+    }
+
+}
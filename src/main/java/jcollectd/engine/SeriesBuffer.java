@@ -0,0 +1,117 @@
+package jcollectd.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SeriesBuffer {
+
+    private final SampleTable table;
+    private final int capacity;
+    // ring buffer made of primitive columns, oldest sample is at head when buffer is full
+    private final long[] timestamps;
+    private double[][] columns;
+    private int head;
+    private int size;
+    // timestamp of the latest sample pushed out of the buffer, or not loaded at all, anything up to it is only in the store
+    private long evictedTms;
+
+    public SeriesBuffer(SampleTable table, int capacity, long evictedTms) {
+        this.table = table;
+        this.capacity = capacity;
+        this.evictedTms = evictedTms;
+        timestamps = new long[capacity];
+        // tables per core are as wide as the number of cores, allocated with the first sample
+        columns = new double[table.isPerCore() ? 0 : table.getColumns().size()][capacity];
+    }
+
+    public synchronized void append(long sampleTms, double[] values) {
+        // samples must be strictly increasing, anything else is a duplicate
+        if (size > 0 && sampleTms <= timestamps[(head + size - 1) % capacity]) {
+            return;
+        }
+        // tables per core grow when cores come online (or with a resized virtual machine), older samples are zero for them
+        if (values.length > columns.length) {
+            double[][] wider = Arrays.copyOf(columns, values.length);
+            for (int i = columns.length; i < wider.length; i++) {
+                wider[i] = new double[capacity];
+            }
+            columns = wider;
+        }
+        int slot;
+        if (size < capacity) {
+            slot = (head + size) % capacity;
+            size++;
+        } else {
+            slot = head;
+            head = (head + 1) % capacity;
+            evictedTms = timestamps[slot];
+        }
+        timestamps[slot] = sampleTms;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][slot] = i < values.length ? values[i] : 0;
+        }
+    }
+
+    public synchronized long getEvictedTms() {
+        return evictedTms;
+    }
+
+    public synchronized List<Object[]> read(long from, long resolution) {
+        int first = firstAfter(from);
+        List<Object[]> ret = new ArrayList<>(resolution > 0 ? 16 : size - first);
+        double[] values = new double[columns.length];
+        long bucket = Long.MIN_VALUE;
+        int count = 0;
+        for (int n = first; n < size; n++) {
+            int slot = (head + n) % capacity;
+            long sampleTms = timestamps[slot];
+            if (resolution <= 0) {
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = columns[i][slot];
+                }
+                ret.add(table.toRow(sampleTms, values));
+                continue;
+            }
+
+            // downsampling on the fly, as average of each bucket
+            long sampleBucket = Math.floorDiv(sampleTms, resolution) * resolution;
+            if (sampleBucket != bucket && count > 0) {
+                ret.add(table.toRow(bucket, average(values, count)));
+                count = 0;
+            }
+            bucket = sampleBucket;
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = count == 0 ? columns[i][slot] : values[i] + columns[i][slot];
+            }
+            count++;
+        }
+        if (count > 0) {
+            ret.add(table.toRow(bucket, average(values, count)));
+        }
+        return ret;
+    }
+
+    // timestamps are strictly increasing from head, so incremental reads start right after the last sample already seen, without walking the whole window
+    private int firstAfter(long from) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[(head + mid) % capacity] <= from) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double[] average(double[] sums, int count) {
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] /= count;
+        }
+        return sums;
+    }
+
+}
@@ -0,0 +1,127 @@
+package jcollectd.engine;
+
+import jcollectd.common.dto.config.AppConfig;
+import jcollectd.common.dto.config.Probe;
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.engine.store.SampleStore;
+import lombok.extern.log4j.Log4j2;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static jcollectd.common.CommonUtils.smartElapsed;
+
+@Log4j2
+public class SeriesCache {
+
+    // a few extra slots, so that late or early cycles don't push the oldest sample of the window out
+    private static final int SPARE_CAPACITY = 16;
+    // probes per core are as wide as the number of cores, only their latest samples are kept in memory, older ones are read from the store
+    private static final Duration PER_CORE_WINDOW = Duration.ofHours(1);
+
+    private final List<Probe> probes;
+    private final SampleStore store;
+    private final List<SeriesBuffer> buffers;
+    // timestamp of the latest cycle appended to all buffers
+    private volatile Instant lastTms;
+
+    public SeriesCache(AppConfig config, SampleStore store) throws Exception {
+        this.probes = config.getProbes();
+        this.store = store;
+        Duration perCoreWindow = PER_CORE_WINDOW.compareTo(config.getRetention()) < 0 ? PER_CORE_WINDOW : config.getRetention();
+        Instant now = Instant.now();
+        buffers = new ArrayList<>(probes.size());
+        for (var probe : probes) {
+            SampleTable table = SampleTable.of(probe.getType());
+            Duration window = table.isPerCore() ? perCoreWindow : config.getRetention();
+            buffers.add(new SeriesBuffer(table, getCapacity(window, config.getInterval()), now.minus(window).getEpochSecond()));
+        }
+
+        // filling buffers with samples already persisted, so charts survive restarts
+        long startTime = System.nanoTime();
+        long loadedTms = Math.max(load(false, now.minus(config.getRetention())), load(true, now.minus(perCoreWindow)));
+        lastTms = loadedTms != Long.MIN_VALUE ? Instant.ofEpochSecond(loadedTms) : null;
+        log.info("Series cache loaded in {}", smartElapsed(System.nanoTime() - startTime));
+    }
+
+    private static int getCapacity(Duration window, Duration interval) {
+        return (int) Math.min(Integer.MAX_VALUE - SPARE_CAPACITY, window.dividedBy(interval)) + SPARE_CAPACITY;
+    }
+
+    private long load(boolean perCore, Instant from) throws Exception {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < probes.size(); i++) {
+            if (SampleTable.of(probes.get(i).getType()).isPerCore() == perCore) {
+                indexes.add(i);
+            }
+        }
+        long[] loadedTms = {Long.MIN_VALUE};
+        if (!indexes.isEmpty()) {
+            store.readSamples(indexes.stream().map(probes::get).toList(), from, null, null, (idx, sampleTms, values) -> {
+                buffers.get(indexes.get(idx)).append(sampleTms, values);
+                loadedTms[0] = Math.max(loadedTms[0], sampleTms);
+            });
+        }
+        return loadedTms[0];
+    }
+
+    public void append(List<ComputedSample> samples) {
+        // computed samples are in the same order of configured probes
+        Instant cycleTms = null;
+        for (int i = 0; i < samples.size(); i++) {
+            var sample = samples.get(i);
+            buffers.get(i).append(SampleTable.getSampleTms(sample).getEpochSecond(), SampleTable.getValues(sample));
+            if (cycleTms == null || SampleTable.getSampleTms(sample).isAfter(cycleTms)) {
+                cycleTms = SampleTable.getSampleTms(sample);
+            }
+        }
+        // cursor moves only once the whole cycle is visible in every buffer, then subscribers waiting for it are woken up
+        if (cycleTms != null && (lastTms == null || cycleTms.isAfter(lastTms))) {
+            synchronized (this) {
+                lastTms = cycleTms;
+                notifyAll();
+            }
+        }
+    }
+
+    public Instant getLastTms() {
+        return lastTms;
+    }
+
+    // waits for a cycle newer than given one to be appended, returns false if none arrived within timeout
+    public synchronized boolean awaitCycle(Instant after, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (Objects.equals(lastTms, after)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    public List<List<Object[]>> getSamples(Instant from, Duration resolution) throws Exception {
+        long seconds = resolution != null ? resolution.getSeconds() : 0;
+        List<List<Object[]>> ret = new ArrayList<>(buffers.size());
+        for (int i = 0; i < buffers.size(); i++) {
+            var buffer = buffers.get(i);
+            long evictedTms = buffer.getEvictedTms();
+            if (from.getEpochSecond() >= evictedTms) {
+                ret.add(buffer.read(from.getEpochSecond(), seconds));
+                continue;
+            }
+            // window is longer than what's kept in memory, older samples are read from the store up to the first bucket entirely in memory
+            long boundary = seconds > 0 ? Math.floorDiv(evictedTms, seconds) * seconds + seconds - 1 : evictedTms;
+            List<Object[]> rows = store.getSamples(List.of(probes.get(i)), from, Instant.ofEpochSecond(boundary), resolution).getFirst();
+            rows.addAll(buffer.read(boundary, seconds));
+            ret.add(rows);
+        }
+        return ret;
+    }
+
+}
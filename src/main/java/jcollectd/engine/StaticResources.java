@@ -0,0 +1,133 @@
+package jcollectd.engine;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static jcollectd.common.CommonUtils.smartElapsed;
+
+// web application is small and never changes while running, so it's entirely loaded in memory, together with compressed variants
+@Log4j2
+public class StaticResources {
+
+    private static final String WEB_ROOT = "/web";
+    private static final String INDEX = "index.html";
+    // angular bundles carry a hash of their content in the name, so they can be cached forever
+    private static final Pattern HASHED_NAME = Pattern.compile("^.+-[A-Za-z0-9]{8,}\\.[a-z0-9]+$");
+    private static final List<String> COMPRESSIBLE_TYPES = List.of("text/", "application/json", "image/svg+xml", "application/manifest+json");
+
+    private final Map<String, Resource> resources;
+
+    private StaticResources(Map<String, Resource> resources) {
+        this.resources = resources;
+    }
+
+    public static StaticResources load() throws IOException {
+        long startTime = System.nanoTime();
+        Map<String, Resource> resources = new HashMap<>();
+        var url = StaticResources.class.getResource(WEB_ROOT);
+        if (url == null) {
+            log.warn("Web application not found among resources, only API will be available");
+            return new StaticResources(resources);
+        }
+
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
+        }
+        // resources are either in the executable jar, or in a plain directory when running from IDE
+        try (FileSystem fs = uri.getScheme().equals("jar") ? FileSystems.newFileSystem(uri, Map.of()) : null;
+             Stream<Path> files = Files.walk(fs != null ? fs.getPath(WEB_ROOT) : Path.of(uri))) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                String name = file.getFileName().toString();
+                resources.put(name, newResource(name, Files.readAllBytes(file)));
+            }
+        }
+        log.info("Loaded {} static resources in {}", resources.size(), smartElapsed(System.nanoTime() - startTime));
+        return new StaticResources(resources);
+    }
+
+    // resources are looked up by file name only, since the webapp could be mounted in a specific context root
+    public Resource get(String name) {
+        return resources.get(name);
+    }
+
+    public Resource getIndex() {
+        return resources.get(INDEX);
+    }
+
+    private static Resource newResource(String name, byte[] body) throws IOException {
+        String contentType = getContentType(name);
+        byte[] gzipBody = null;
+        if (COMPRESSIBLE_TYPES.stream().anyMatch(contentType::startsWith)) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 2);
+            try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+                gos.write(body);
+            }
+            // tiny files could even grow when compressed
+            if (bos.size() < body.length) {
+                gzipBody = bos.toByteArray();
+            }
+        }
+        String etag = "\"" + digest(body) + "\"";
+        String cacheControl = HASHED_NAME.matcher(name).matches() ? "public, max-age=31536000, immutable" : "no-cache";
+        return new Resource(body, gzipBody, contentType, etag, cacheControl);
+    }
+
+    private static String getContentType(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        return switch (extension) {
+            case "html" -> "text/html; charset=utf-8";
+            case "css" -> "text/css; charset=utf-8";
+            case "js", "mjs" -> "text/javascript; charset=utf-8";
+            case "json", "map" -> "application/json";
+            case "webmanifest" -> "application/manifest+json";
+            case "txt" -> "text/plain; charset=utf-8";
+            case "svg" -> "image/svg+xml";
+            case "ico" -> "image/x-icon";
+            case "png" -> "image/png";
+            case "jpg", "jpeg" -> "image/jpeg";
+            case "woff" -> "font/woff";
+            case "woff2" -> "font/woff2";
+            case "ttf" -> "font/ttf";
+            default -> "application/octet-stream";
+        };
+    }
+
+    private static String digest(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new UnsupportedOperationException("SHA-256 not available", ex);
+        }
+    }
+
+    public record Resource(byte[] body, byte[] gzipBody, String contentType, String etag, String cacheControl) {
+
+        // strong validators must differ between representations of the same resource
+        public String getEtag(boolean gzip) {
+            return gzip ? etag.substring(0, etag.length() - 1) + "-gzip\"" : etag;
+        }
+
+    }
+
+}
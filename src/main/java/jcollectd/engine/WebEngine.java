@@ -1,31 +1,70 @@
 package jcollectd.engine;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import jcollectd.common.ExceptionUtils;
 import jcollectd.common.dto.config.AppConfig;
+import jcollectd.common.dto.config.Probe;
+import jcollectd.common.dto.config.Rollup;
+import jcollectd.common.dto.rest.ColumnarDatasets;
+import jcollectd.common.dto.rest.ResponseFormat;
 import jcollectd.common.dto.rest.Runtime;
+import jcollectd.engine.store.SampleStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.OutputStream;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static jcollectd.common.CommonUtils.OBJECT_MAPPER;
+import static jcollectd.common.CommonUtils.isEmpty;
 import static jcollectd.common.CommonUtils.smartElapsed;
 
 @RequiredArgsConstructor
 @Log4j2
 public class WebEngine implements HttpHandler {
 
+    private static final long MIN_CHART_POINTS = 500;
+    private static final int MIN_MAX_POINTS = 3;
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final int COMPRESSION_THRESHOLD = 1024;
+    private static final int COMPRESSION_BUFFER_SIZE = 8192;
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+    private static final int SLICE_ROWS = 4096;
+    private static final Pattern SAMPLES_PATH = Pattern.compile("^/api/probes/(\\d+)/samples$");
+
     private final AppConfig config;
     private final CollectEngine engine;
+    private final PersistEngine persistEngine;
+    private final SeriesCache seriesCache;
+    private final SampleStore store;
+    private final StaticResources staticResources;
+    private final MetricsRegistry registry;
+    private final ResponseCache responseCache = new ResponseCache();
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
@@ -33,88 +72,436 @@ public class WebEngine implements HttpHandler {
         log.debug("{} {}", exchange.getRequestMethod(), exchange.getRequestURI());
 
         try {
-            Response response = switch (exchange.getRequestURI().toString()) {
-                case "/api/runtime" -> handleApiRequest();
-                default -> serveStaticResource(exchange.getRequestURI().toString());
+            Response response = switch (exchange.getRequestURI().getPath()) {
+                case "/api/runtime" -> handleApiRequest(exchange);
+                case "/api/events" -> streamEvents(exchange);
+                case "/api/self" -> new Response(OBJECT_MAPPER.writeValueAsBytes(registry.getSnapshot()), "application/json");
+                case "/metrics" -> new Response(engine.getMetricsSnapshot().getExposition(), MetricsSnapshot.CONTENT_TYPE);
+                case String s when SAMPLES_PATH.matcher(s).matches() -> streamSamples(exchange);
+                default -> serveStaticResource(exchange);
             };
-            exchange.getResponseHeaders().put("Access-Control-Allow-Origin", List.of("*"));
-            exchange.getResponseHeaders().put("Content-type", List.of(response.contentType));
-            exchange.sendResponseHeaders(200, response.body.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(response.body);
+            // streamed responses have already been sent
+            if (response != null) {
+                exchange.getResponseHeaders().put("Access-Control-Allow-Origin", List.of("*"));
+                exchange.getResponseHeaders().put("Content-type", List.of(response.contentType));
+                response.headers.forEach((k, v) -> exchange.getResponseHeaders().put(k, List.of(v)));
+                if (response.body == null) {
+                    exchange.sendResponseHeaders(response.status, -1);
+                    exchange.close();
+                } else {
+                    exchange.sendResponseHeaders(response.status, response.body.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(response.body);
+                    }
+                }
             }
+        } catch (IllegalArgumentException ex) {
+            log.warn("Bad request {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), ex.getMessage());
+            sendError(exchange, 400, "Bad request");
         } catch (Exception ex) {
             log.error("Error during {} {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), ExceptionUtils.getCanonicalFormWithStackTrace(ex));
-            byte[] body = "Internal server error".getBytes(StandardCharsets.UTF_8);
-            exchange.getResponseHeaders().put("Access-Control-Allow-Origin", List.of("*"));
-            exchange.getResponseHeaders().put("Content-type", List.of("text/plain; charset=utf-8"));
-            exchange.sendResponseHeaders(500, body.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(body);
+            // once streaming has started, status can't be changed anymore, the response is just truncated
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, "Internal server error");
+            } else {
+                exchange.close();
             }
         }
 
         long endTime = System.nanoTime();
+        String endpoint = getEndpoint(exchange.getRequestURI().getPath());
+        if (endpoint != null) {
+            registry.histogram(endpoint).record(endTime - startTime);
+        }
         log.debug("{} {} served in {}", exchange.getRequestMethod(), exchange.getRequestURI(), smartElapsed(endTime - startTime));
     }
 
-    private Response serveStaticResource(String path) throws IOException {
+    private String getEndpoint(String path) {
+        return switch (path) {
+            case "/api/runtime" -> "web.runtime";
+            // event streams last as long as subscribers stay connected
+            case "/api/events" -> null;
+            case "/api/self" -> "web.self";
+            case "/metrics" -> "web.metrics";
+            case String s when SAMPLES_PATH.matcher(s).matches() -> "web.samples";
+            default -> "web.static";
+        };
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().put("Access-Control-Allow-Origin", List.of("*"));
+        exchange.getResponseHeaders().put("Content-type", List.of("text/plain; charset=utf-8"));
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private String getQueryParameter(URI uri, String name) {
+        if (uri.getQuery() == null) {
+            return null;
+        }
+        return Arrays.stream(uri.getQuery().split("&"))
+                .map(p -> p.split("=", 2))
+                .filter(p -> p[0].equals(name) && p.length == 2)
+                .map(p -> p[1])
+                .findFirst()
+                .orElse(null);
+    }
+
+    private Response serveStaticResource(HttpExchange exchange) {
         // emulate nginx try_files, serve target file if exists, otherwise index.html
         // since the webapp could be mounted in a specific context root, extract last fragment from the path and assume relative to web directory
-        String fragment = "/" + Arrays.asList(path.split("/", -1)).getLast();
-        if (fragment.equals("/")) {
-            return handleIndexRequest();
+        String fragment = Arrays.asList(exchange.getRequestURI().getPath().split("/", -1)).getLast();
+        StaticResources.Resource resource = fragment.isEmpty() ? null : staticResources.get(fragment);
+        if (resource == null) {
+            resource = staticResources.getIndex();
         }
-        try (var is = this.getClass().getResourceAsStream("/web" + fragment)) {
-            if (is == null) {
-                return handleIndexRequest();
-            }
+        if (resource == null) {
+            return new Response(404, "Not found".getBytes(StandardCharsets.UTF_8), "text/plain; charset=utf-8", Map.of());
+        }
+
+        boolean gzip = resource.gzipBody() != null && accepts(exchange.getRequestHeaders().getFirst("Accept-Encoding"), GZIP);
+        String etag = resource.getEtag(gzip);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("ETag", etag);
+        headers.put("Cache-Control", resource.cacheControl());
+        if (resource.gzipBody() != null) {
+            headers.put("Vary", "Accept-Encoding");
+        }
+        // browser already has the same content, no need to send it again
+        if (matchesEtag(exchange, etag)) {
+            return new Response(304, null, resource.contentType(), headers);
+        }
+        if (gzip) {
+            headers.put("Content-Encoding", "gzip");
+        }
+        return new Response(200, gzip ? resource.gzipBody() : resource.body(), resource.contentType(), headers);
+    }
+
+    private boolean accepts(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        // a zero quality value explicitly refuses the encoding
+        return Arrays.stream(acceptEncoding.split(","))
+                .map(e -> e.trim().split(";"))
+                .anyMatch(e -> (e[0].trim().equals(encoding) || e[0].trim().equals("*")) && Arrays.stream(e).skip(1).map(String::trim).noneMatch(q -> q.matches("q=0(\\.0*)?")));
+    }
 
-            String contentType = switch (path) {
-                case String s when s.toLowerCase().endsWith(".css") -> "text/css; charset=utf-8";
-                case String s when s.toLowerCase().endsWith(".js") -> "text/javascript; charset=utf-8";
-                default -> "application/octet-stream";
+    private String getEncoding(HttpExchange exchange) {
+        // gzip is preferred, since it's what every client implements the same way
+        if (config.getCompressionLevel() == 0) {
+            return null;
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accepts(acceptEncoding, GZIP) ? GZIP : accepts(acceptEncoding, DEFLATE) ? DEFLATE : null;
+    }
+
+    private OutputStream compress(OutputStream os, String encoding) throws IOException {
+        // sync flush makes every flush emit what has been written so far, so streamed responses are not held back
+        return switch (encoding) {
+            case GZIP -> new GZIPOutputStream(os, COMPRESSION_BUFFER_SIZE, true) {
+                {
+                    def.setLevel(config.getCompressionLevel());
+                }
+            };
+            case DEFLATE -> new DeflaterOutputStream(os, new Deflater(config.getCompressionLevel()), COMPRESSION_BUFFER_SIZE, true) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    def.end();
+                }
             };
-            return new Response(is.readAllBytes(), contentType);
+            case null, default -> os;
+        };
+    }
+
+    private byte[] compress(byte[] body, String encoding) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream os = compress(bos, encoding)) {
+            os.write(body);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bos.toByteArray();
+    }
+
+    private boolean matchesEtag(HttpExchange exchange, String etag) {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        return ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(",")).map(String::trim).anyMatch(t -> t.equals(etag) || t.equals("*"));
+    }
+
+    private Response handleApiRequest(HttpExchange exchange) {
+        ResponseFormat format = getFormat(exchange);
+        String contentType = format == ResponseFormat.BINARY ? "application/octet-stream" : "application/json";
+        ResponseCache.Entry entry = getRuntimeEntry(getQueryParameter(exchange.getRequestURI(), "since"), getQueryParameter(exchange.getRequestURI(), "maxPoints"), format);
+        // small responses are not worth the effort
+        String encoding = entry.getBody().length < COMPRESSION_THRESHOLD ? null : getEncoding(exchange);
+
+        // content only changes with collect cycles, so validators are derived from the cycle it was built from
+        Map<String, String> headers = new LinkedHashMap<>();
+        long cycle = entry.getCycleTms() != null ? entry.getCycleTms().getEpochSecond() : 0;
+        String etag = "\"" + cycle + (encoding != null ? "-" + encoding : "") + "\"";
+        headers.put("ETag", etag);
+        headers.put("Cache-Control", "no-cache");
+        headers.put("Vary", "Accept-Encoding");
+        if (entry.getCycleTms() != null) {
+            headers.put("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(entry.getCycleTms().atZone(ZoneOffset.UTC)));
+        }
+        if (matchesEtag(exchange, etag) || notModifiedSince(exchange, entry.getCycleTms())) {
+            return new Response(304, null, contentType, headers);
+        }
+        if (encoding == null) {
+            return new Response(200, entry.getBody(), contentType, headers);
+        }
+        headers.put("Content-Encoding", encoding);
+        return new Response(200, entry.getBody(encoding, body -> compress(body, encoding)), contentType, headers);
+    }
+
+    private boolean notModifiedSince(HttpExchange exchange, Instant cycleTms) {
+        // entity tags take precedence, when provided
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (cycleTms == null || ifModifiedSince == null || exchange.getRequestHeaders().containsKey("If-None-Match")) {
+            return false;
+        }
+        try {
+            return !cycleTms.isAfter(ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+        } catch (DateTimeParseException ex) {
+            return false;
         }
     }
 
-    private Response handleIndexRequest() throws IOException {
-        try (var is = this.getClass().getResourceAsStream("/web/index.html")) {
-            return new Response(is.readAllBytes(), "text/html; charset=utf-8");
+    private ResponseFormat getFormat(HttpExchange exchange) {
+        String value = getQueryParameter(exchange.getRequestURI(), "format");
+        if (value == null) {
+            return ResponseFormat.JSON;
+        }
+        ResponseFormat format = ResponseFormat.of(value);
+        if (format == null) {
+            throw new IllegalArgumentException("Invalid format parameter: " + value);
         }
+        return format;
+    }
+
+    private ResponseCache.Entry getRuntimeEntry(String since, String maxPoints, ResponseFormat format) {
+        // cursor is taken before reading, so samples appended meanwhile are sent again on next request rather than lost
+        Instant lastTms = seriesCache.getLastTms();
+        return responseCache.get(lastTms, since, maxPoints, format, () -> {
+            try {
+                return getRuntime(lastTms, since, maxPoints, format);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                // samples older than the window kept in memory are read from the store
+                throw new IllegalStateException("Reading samples from store failed", ex);
+            }
+        });
     }
 
-    private Response handleApiRequest() throws SQLException, JsonProcessingException {
+    private Response streamEvents(HttpExchange exchange) throws InterruptedException {
+        // browsers reconnecting by themselves send the id of the last event received, which takes precedence
+        String since = Optional.ofNullable(exchange.getRequestHeaders().getFirst("Last-Event-ID")).orElse(getQueryParameter(exchange.getRequestURI(), "since"));
+        String maxPoints = getQueryParameter(exchange.getRequestURI(), "maxPoints");
+        ResponseFormat format = getFormat(exchange);
+        if (format == ResponseFormat.BINARY) {
+            throw new IllegalArgumentException("Binary format is not supported by event stream");
+        }
+        ResponseCache.Entry entry = getRuntimeEntry(isEmpty(since) ? null : since, maxPoints, format);
+
+        // each subscriber holds its own virtual thread, sleeping until next cycle is appended to series cache
+        exchange.getResponseHeaders().put("Access-Control-Allow-Origin", List.of("*"));
+        exchange.getResponseHeaders().put("Content-type", List.of("text/event-stream; charset=utf-8"));
+        exchange.getResponseHeaders().put("Cache-Control", List.of("no-cache"));
+        String encoding = getEncoding(exchange);
+        if (encoding != null) {
+            exchange.getResponseHeaders().put("Content-Encoding", List.of(encoding));
+            exchange.getResponseHeaders().put("Vary", List.of("Accept-Encoding"));
+        }
+        try {
+            exchange.sendResponseHeaders(200, 0);
+        } catch (IOException ex) {
+            log.debug("Event subscriber {} disconnected: {}", exchange.getRemoteAddress(), ex.getMessage());
+            return null;
+        }
+        // events share the same compression context, so repeated probes and field names cost almost nothing after the first one
+        try (OutputStream os = compress(exchange.getResponseBody(), encoding)) {
+            os.write(("retry: " + config.getInterval().toMillis() + "\n\n").getBytes(StandardCharsets.UTF_8));
+            while (true) {
+                // first event carries everything newer than requested cursor, the following ones only samples of new cycles
+                // subscribers are all at the same cursor, so the event of each cycle is serialized once and shared among them
+                StringBuilder sb = new StringBuilder();
+                if (entry.getCycleTms() != null) {
+                    sb.append("id: ").append(entry.getCycleTms()).append("\n");
+                }
+                sb.append("event: runtime\n").append("data: ");
+                os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                os.write(entry.getBody());
+                os.write("\n\n".getBytes(StandardCharsets.UTF_8));
+                os.flush();
+
+                // comments keep idle connections alive through proxies, and detect subscribers gone away
+                while (!seriesCache.awaitCycle(entry.getCycleTms(), HEARTBEAT_INTERVAL)) {
+                    os.write(": heartbeat\n\n".getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                }
+                entry = getRuntimeEntry(entry.getCycleTms() != null ? entry.getCycleTms().toString() : null, maxPoints, format);
+            }
+        } catch (IOException ex) {
+            log.debug("Event subscriber {} disconnected: {}", exchange.getRemoteAddress(), ex.getMessage());
+        }
+        return null;
+    }
+
+    private byte[] getRuntime(Instant lastTms, String since, String maxPoints, ResponseFormat format) throws Exception {
         long startTime = System.nanoTime();
-        List<List<Object[]>> datasets = new ArrayList<>(config.getProbes().size());
-        try (var service = new SqliteService()) {
-            service.initializeDatabase();
-            for (var probe : config.getProbes()) {
-                var rs = switch (probe.getType()) {
-                    case LOAD -> service.getLoadSamples();
-                    case CPU -> service.getCpuSamples();
-                    case MEM -> service.getMemSamples();
-                    case NET -> service.getNetSamples(probe.getDevice());
-                    case DISK, ZFS -> service.getDiskSamples(probe.getDevice());
-                    case GPU -> service.getGpuSamples();
-                };
-                datasets.add(rs);
+        Instant retentionTms = Instant.now().minus(config.getRetention());
+        Duration resolution = getResolution(config.getRetention(), config.getRetention());
+        Instant from = retentionTms;
+        if (since != null) {
+            Instant sinceTms;
+            try {
+                sinceTms = Instant.parse(since);
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException("Invalid since parameter: " + since, ex);
             }
+            if (resolution != null) {
+                // last bucket could have been partial when previously sent, so it's sent again from its first sample
+                long seconds = resolution.getSeconds();
+                sinceTms = Instant.ofEpochSecond(Math.floorDiv(sinceTms.getEpochSecond(), seconds) * seconds - 1);
+            }
+            from = sinceTms.isAfter(from) ? sinceTms : from;
+        }
+        List<List<Object[]>> datasets = seriesCache.getSamples(from, resolution);
+        if (maxPoints != null) {
+            // there's no point in sending more samples than the pixels available to draw them
+            int points = Integer.parseInt(maxPoints);
+            if (points < MIN_MAX_POINTS) {
+                throw new IllegalArgumentException("Invalid maxPoints parameter: " + maxPoints);
+            }
+            datasets.replaceAll(rows -> Downsampler.lttb(rows, points));
         }
 
+        ColumnarDatasets columnar = format != ResponseFormat.JSON ? ColumnarFormat.of(datasets) : null;
         Runtime runtime = new Runtime(config.getHostname(), config.getInterval().getSeconds(), config.getProbes(),
                 engine.getCurResult() != null ? engine.getCurResult().getCollectTms() : null,
                 engine.getCollectElapsed() != null ? smartElapsed(engine.getCollectElapsed()) : null,
-                engine.getPersistElapsed() != null ? smartElapsed(engine.getPersistElapsed()) : null,
+                persistEngine.getPersistElapsed() != null ? smartElapsed(persistEngine.getPersistElapsed()) : null,
                 smartElapsed(System.nanoTime() - startTime),
-                datasets);
-
+                persistEngine.getQueueDepth(),
+                persistEngine.getDroppedCycles(),
+                lastTms,
+                retentionTms,
+                format == ResponseFormat.JSON ? datasets : null,
+                format == ResponseFormat.BINARY ? ColumnarFormat.withoutVectors(columnar) : columnar);
         byte[] body = OBJECT_MAPPER.writeValueAsBytes(runtime);
-        return new Response(body, "application/json");
+        return format == ResponseFormat.BINARY ? ColumnarFormat.toBinary(body, columnar) : body;
     }
 
-    private record Response(byte[] body, String contentType) {
+    private Response streamSamples(HttpExchange exchange) throws Exception {
+        Matcher m = SAMPLES_PATH.matcher(exchange.getRequestURI().getPath());
+        m.matches();
+        int idx = Integer.parseInt(m.group(1));
+        if (idx >= config.getProbes().size()) {
+            throw new IllegalArgumentException("Invalid probe index: " + idx);
+        }
+        Probe probe = config.getProbes().get(idx);
+        SampleTable table = SampleTable.of(probe.getType());
+        Instant now = Instant.now();
+        Instant from = parseInstant(exchange.getRequestURI(), "from", now.minus(config.getRetention()));
+        Instant to = parseInstant(exchange.getRequestURI(), "to", null);
+        if (to != null && !to.isAfter(from)) {
+            throw new IllegalArgumentException("Invalid time range: " + from + " - " + to);
+        }
+        Duration resolution = getResolution(Duration.between(from, now), Duration.between(from, to != null ? to : now));
+
+        // rows are written to the response one slice at a time, with chunked encoding, so heap usage doesn't depend on the window
+        exchange.getResponseHeaders().put("Access-Control-Allow-Origin", List.of("*"));
+        exchange.getResponseHeaders().put("Content-type", List.of("application/json"));
+        String encoding = getEncoding(exchange);
+        if (encoding != null) {
+            exchange.getResponseHeaders().put("Content-Encoding", List.of(encoding));
+            exchange.getResponseHeaders().put("Vary", List.of("Accept-Encoding"));
+        }
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = compress(exchange.getResponseBody(), encoding);
+             JsonGenerator gen = OBJECT_MAPPER.getFactory().createGenerator(os)) {
+            gen.writeStartObject();
+            gen.writePOJOField("probe", probe);
+            if (resolution != null) {
+                gen.writeNumberField("resolution", resolution.getSeconds());
+            } else {
+                gen.writeNullField("resolution");
+            }
+            gen.writeArrayFieldStart("samples");
+            // each slice is read into memory and written once the store released its locks, so a slow client never holds them
+            Duration step = (resolution != null ? resolution : config.getInterval()).multipliedBy(SLICE_ROWS);
+            Instant end = to != null ? to : now;
+            List<Object[]> rows = new ArrayList<>();
+            long[] lastTms = {Long.MIN_VALUE};
+            for (Instant sliceFrom = from; ; sliceFrom = sliceFrom.plus(step)) {
+                boolean last = !sliceFrom.plus(step).isBefore(end);
+                rows.clear();
+                store.readSamples(List.of(probe), sliceFrom, last ? to : sliceFrom.plus(step), resolution, (_, sampleTms, values) -> {
+                    // rollups are read from the bucket containing the start of the slice, already written with the previous one
+                    if (sampleTms > lastTms[0]) {
+                        rows.add(table.toRow(sampleTms, values));
+                        lastTms[0] = sampleTms;
+                    }
+                });
+                for (Object[] row : rows) {
+                    gen.writeStartArray();
+                    for (Object value : row) {
+                        switch (value) {
+                            case Instant i -> gen.writeString(i.toString());
+                            case Long l -> gen.writeNumber(l);
+                            case Double d -> gen.writeNumber(d);
+                            default -> gen.writeObject(value);
+                        }
+                    }
+                    gen.writeEndArray();
+                }
+                if (last) {
+                    break;
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        return null;
+    }
+
+    private Instant parseInstant(URI uri, String name, Instant defaultValue) {
+        String value = getQueryParameter(uri, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("Invalid " + name + " parameter: " + value, ex);
+        }
+    }
+
+    private Duration getResolution(Duration age, Duration window) {
+        // coarsest rollup covering the whole window and still giving enough points to draw a detailed chart, raw samples otherwise
+        return config.getRollups().stream()
+                .filter(r -> r.getRetention().compareTo(age) >= 0)
+                .filter(r -> window.dividedBy(r.getResolution()) >= MIN_CHART_POINTS)
+                .map(Rollup::getResolution)
+                .max(Comparator.naturalOrder())
+                .orElse(null);
+    }
+
+    private record Response(int status, byte[] body, String contentType, Map<String, String> headers) {
+
+        private Response(byte[] body, String contentType) {
+            this(200, body, contentType, Map.of());
+        }
+
     }
 
 }
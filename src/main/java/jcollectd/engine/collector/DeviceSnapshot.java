@@ -0,0 +1,69 @@
+package jcollectd.engine.collector;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// counters of all configured devices, read at once from a /proc file listing every device on its own line (as /proc/net/dev or /proc/diskstats),
+// so the file is read once per cycle however many probes need it, and all of them see the same instant
+public class DeviceSnapshot {
+
+    private final ProcFile file;
+    // position of the device name in each line, and of each counter taken, in ascending order
+    private final int nameField;
+    private final int[] valueFields;
+
+    private final List<String> devices = new ArrayList<>();
+    private byte[][] tokens = new byte[0][];
+    private long[][] values = new long[0][];
+
+    public DeviceSnapshot(Path path, int nameField, int... valueFields) {
+        this.file = new ProcFile(path);
+        this.nameField = nameField;
+        this.valueFields = valueFields;
+    }
+
+    // devices are registered while building collectors, each one gets a slot to retrieve its counters from
+    public synchronized int register(String device) {
+        int slot = devices.indexOf(device);
+        if (slot >= 0) {
+            return slot;
+        }
+        devices.add(device);
+        tokens = Arrays.copyOf(tokens, devices.size());
+        tokens[devices.size() - 1] = device.getBytes(StandardCharsets.US_ASCII);
+        values = Arrays.copyOf(values, devices.size());
+        values[devices.size() - 1] = new long[valueFields.length];
+        return devices.size() - 1;
+    }
+
+    public void read() throws IOException {
+        // devices not found (e.g. an interface not up yet) are reported as zero
+        for (long[] v : values) {
+            Arrays.fill(v, 0);
+        }
+        file.read();
+        while (file.hasRemaining()) {
+            file.skipTokens(nameField);
+            int slot = file.matchToken(tokens);
+            if (slot >= 0) {
+                int field = nameField + 1;
+                for (int i = 0; i < valueFields.length; i++) {
+                    file.skipTokens(valueFields[i] - field);
+                    values[slot][i] = file.nextLong();
+                    field = valueFields[i] + 1;
+                }
+            }
+            file.nextLine();
+        }
+    }
+
+    // counter by position among the ones taken
+    public long get(int slot, int value) {
+        return values[slot][value];
+    }
+
+}
@@ -0,0 +1,177 @@
+package jcollectd.engine.collector;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.stream.Stream;
+
+// everything needed by all probes is asked to a single sysctl, netstat and iostat per cycle, instead of spawning commands for each probe,
+// collectors register what they need while being built, and read their values from the outputs parsed once
+@Log4j2
+public class FreeBSDSnapshot {
+
+    private final ProcessRunner runner;
+    private final Set<String> oids = new LinkedHashSet<>();
+    private final Set<String> interfaces = new LinkedHashSet<>();
+    private final Set<String> disks = new LinkedHashSet<>();
+
+    private Map<String, String> sysctl = Map.of();
+    private Map<String, long[]> netstat = Map.of();
+    private Map<String, long[]> iostat = Map.of();
+
+    public FreeBSDSnapshot(ProcessRunner runner) {
+        this.runner = runner;
+    }
+
+    public ProcessRunner getRunner() {
+        return runner;
+    }
+
+    // either leaf oids, or whole subtrees
+    public synchronized void registerOids(String... oids) {
+        this.oids.addAll(Arrays.asList(oids));
+    }
+
+    public synchronized void registerInterface(String name) {
+        interfaces.add(name);
+    }
+
+    public synchronized void registerDisks(Collection<String> names) {
+        disks.addAll(names);
+    }
+
+    public void read() throws IOException, InterruptedException {
+        if (!oids.isEmpty()) {
+            sysctl = parseSysctl(runner.run(Stream.concat(Stream.of("sysctl"), oids.stream()).toList()));
+        }
+        if (!interfaces.isEmpty()) {
+            netstat = parseNetstat(runner.run(List.of("netstat", "-i", "-b", "-n")));
+        }
+        if (!disks.isEmpty()) {
+            iostat = parseIostat(runner.run(Stream.concat(Stream.of("iostat", "-Ix"), disks.stream()).toList()));
+        }
+    }
+
+    // value of a leaf oid, or null if unknown
+    public String getSysctl(String oid) {
+        return sysctl.get(oid);
+    }
+
+    // value of a leaf oid the collector can't do without
+    public String requireSysctl(String oid) throws IOException {
+        String ret = sysctl.get(oid);
+        if (ret == null) {
+            throw new IOException(String.format("Unknown sysctl oid %s", oid));
+        }
+        return ret;
+    }
+
+    // values of all leaves under given subtree
+    public Map<String, String> getSysctlSubtree(String oid) {
+        Map<String, String> ret = new LinkedHashMap<>();
+        sysctl.forEach((k, v) -> {
+            if (k.startsWith(oid + ".")) {
+                ret.put(k, v);
+            }
+        });
+        return ret;
+    }
+
+    // bytes received and transmitted, or null if interface not found
+    public long[] getInterface(String name) {
+        return netstat.get(name);
+    }
+
+    // bytes read and written, or null if device not found
+    public long[] getDisk(String name) {
+        return iostat.get(name);
+    }
+
+    /*
+        # sysctl kern.cp_time vm.loadavg kstat.zfs.misc.arcstats.size kstat.zfs.zroot.dataset
+        kern.cp_time: 316785 0 8123388 66005 617330599
+        vm.loadavg: { 0.21 0.22 0.17 }
+        sysctl: unknown oid 'kstat.zfs.misc.arcstats.size'
+        kstat.zfs.zroot.dataset.objset-0x15.nread: 39873806244
+        kstat.zfs.zroot.dataset.objset-0x15.nwritten: 757338217
+
+        unknown oids are reported on standard error, and don't prevent the others from being printed
+     */
+    static Map<String, String> parseSysctl(List<String> stdout) {
+        Map<String, String> ret = new HashMap<>();
+        for (var line : stdout) {
+            int idx = line.indexOf(": ");
+            if (idx <= 0 || line.startsWith("sysctl:")) {
+                if (!line.isBlank()) {
+                    log.debug("Ignoring sysctl output: {}", line);
+                }
+                continue;
+            }
+            ret.put(line.substring(0, idx), line.substring(idx + 2).trim());
+        }
+        return ret;
+    }
+
+    /*
+        # netstat -i -b -n
+        Name    Mtu Network      Address                Ipkts Ierrs Idrop        Ibytes      Opkts Oerrs        Obytes  Coll
+        ix0    1500 <Link#1>     80:61:5f:08:94:b8  354890649     0     0  359184917448  420246724     0  446709191018     0
+        ix0       - 10.0.0.0/24  10.0.0.2           265005016     -     -  351748830726  659391062     -  808764847758     -
+        lo0   16384 <Link#2>     lo0                   126702     0     0      15429128     126702     0      15429128     0
+        tun0   1500 <Link#3>                                0     0     0             0          0     0             0     0
+
+        link level rows count all traffic of the interface, address could be missing, so counters are taken from the right
+        renamed interfaces could contain blanks, so name is whatever comes before mtu
+        interfaces down are marked with a trailing asterisk
+     */
+    static Map<String, long[]> parseNetstat(List<String> stdout) {
+        Map<String, long[]> ret = new HashMap<>();
+        for (var line : stdout) {
+            String[] split = line.trim().split("\\s+");
+            int link = 2;
+            while (link < split.length && !split[link].startsWith("<Link")) {
+                link++;
+            }
+            if (split.length < link + 6) {
+                continue;
+            }
+            String name = String.join(" ", Arrays.asList(split).subList(0, link - 1));
+            name = name.endsWith("*") ? name.substring(0, name.length() - 1) : name;
+            ret.putIfAbsent(name, new long[]{Long.parseLong(split[split.length - 5]), Long.parseLong(split[split.length - 2])});
+        }
+        return ret;
+    }
+
+    /*
+        # iostat -Ix ada0 ada1
+                                extended device statistics
+        device           r/i         w/i         kr/i         kw/i qlen   tsvc_t/i      sb/i
+        ada0       7919671.0   2973428.0 5905908945.5  119214504.0    0   118260.3   48234.8
+        ada1       7919671.0   2973428.0 5905908945.5  119214504.0    0   118260.3   48234.8
+
+        relevant values are in kilobytes, devices not found are just missing, any diagnostic on standard error is skipped
+     */
+    static Map<String, long[]> parseIostat(List<String> stdout) {
+        Map<String, long[]> ret = new HashMap<>();
+        for (var line : stdout) {
+            String[] split = line.trim().split("\\s+");
+            if (split.length < 5 || split[0].equals("device") || split[0].equals("extended")) {
+                continue;
+            }
+            try {
+                ret.put(split[0], new long[]{toBytes(split[3]), toBytes(split[4])});
+            } catch (NumberFormatException ex) {
+                log.debug("Ignoring iostat output: {}", line);
+            }
+        }
+        return ret;
+    }
+
+    private static long toBytes(String kilobytes) {
+        return new BigDecimal(kilobytes).multiply(BigDecimal.valueOf(1024)).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+}
@@ -0,0 +1,134 @@
+package jcollectd.engine.collector;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// nvidia-smi takes a long time to initialize the driver, so a single instance is kept running in loop mode instead of spawning one for each sample,
+// its output is consumed in background and the latest utilization of each GPU is kept, to be read by collectors at any time,
+// one session is shared by all GPU probes of the host
+@Log4j2
+public class NvidiaSmiSession {
+
+    /*
+        # nvidia-smi --format=csv,noheader,nounits --query-gpu=index,utilization.gpu -lms 1000
+        0, 15
+        1, 0
+        0, 17
+        1, 0
+        ...
+     */
+    private static final List<String> COMMAND = List.of("nvidia-smi", "--format=csv,noheader,nounits", "--query-gpu=index,utilization.gpu", "-lms", "1000");
+    private static final Duration RESTART_DELAY = Duration.ofSeconds(5);
+    // nvidia-smi reports every second, longer silences (restart delay and driver initialization included) mean it's not working
+    private static final Duration MAX_AGE = Duration.ofSeconds(30);
+
+    // latest utilization of each GPU, by index, along with when it was reported, guarded by this
+    private final Map<Integer, Reading> latest = new HashMap<>();
+    private final Thread reader;
+    private volatile Process process;
+    private volatile boolean started;
+    private volatile IOException failure;
+
+    public NvidiaSmiSession() {
+        reader = Thread.ofPlatform().name("nvidia-smi").daemon().unstarted(this::run);
+        // the child process would otherwise outlive the application
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().unstarted(this::destroy));
+    }
+
+    // driver initialization is waited for here, once when probes are built, so that collect cycles never wait for nvidia-smi
+    public synchronized void start() throws IOException, InterruptedException {
+        reader.start();
+        long deadline = System.nanoTime() + MAX_AGE.toNanos();
+        while (latest.isEmpty()) {
+            // never started at all, most likely nvidia-smi is not installed
+            if (!started && failure != null) {
+                throw failure;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new IOException(String.format("No output from nvidia-smi in the first %s seconds", MAX_AGE.getSeconds()));
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    // values are never made up, each GPU keeps its last value while nvidia-smi restarts, until it's older than the maximum age
+    public synchronized Map<Integer, BigDecimal> getLatest() throws IOException {
+        long now = System.nanoTime();
+        latest.values().removeIf(r -> now - r.nanos() > MAX_AGE.toNanos());
+        if (latest.isEmpty()) {
+            throw new IOException(String.format("No output from nvidia-smi in the last %s seconds", MAX_AGE.getSeconds()));
+        }
+        Map<Integer, BigDecimal> ret = new HashMap<>();
+        latest.forEach((index, reading) -> ret.put(index, reading.utilization()));
+        return ret;
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                process = new ProcessBuilder(COMMAND).redirectErrorStream(true).start();
+                started = true;
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        parse(line);
+                    }
+                }
+                log.warn("nvidia-smi exited with code {}, restarting in {} seconds", process.waitFor(), RESTART_DELAY.getSeconds());
+            } catch (IOException ex) {
+                fail(ex);
+                log.warn("nvidia-smi failed, restarting in {} seconds: {}", RESTART_DELAY.getSeconds(), ex.getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                destroy();
+            }
+            try {
+                Thread.sleep(RESTART_DELAY);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void parse(String line) {
+        String[] split = line.split(",");
+        try {
+            update(Integer.parseInt(split[0].trim()), new BigDecimal(split[1].trim()));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            // errors are written on the same stream, as well as "[N/A]" for unsupported cards, on every loop
+            log.debug("Unexpected nvidia-smi output: {}", line);
+        }
+    }
+
+    private synchronized void update(int index, BigDecimal utilization) {
+        latest.put(index, new Reading(utilization, System.nanoTime()));
+        notifyAll();
+    }
+
+    private synchronized void fail(IOException ex) {
+        failure = ex;
+        notifyAll();
+    }
+
+    private void destroy() {
+        Process p = process;
+        if (p != null) {
+            p.destroy();
+        }
+    }
+
+    private record Reading(BigDecimal utilization, long nanos) {
+    }
+
+}
@@ -0,0 +1,207 @@
+package jcollectd.engine.collector;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+// virtual file of /proc, read whole into a buffer reused across cycles and parsed in place, without creating strings or arrays for each line
+// tokens are separated by blanks, a colon right after a token (as in "MemTotal:" or "eth0:") is part of the separator
+// not thread safe, each collector owns its files and is never called concurrently with itself
+public class ProcFile {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final Path path;
+    // direct, so reading doesn't go through temporary buffers of the calling thread
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    private int pos;
+    private int limit;
+
+    public ProcFile(Path path) {
+        this.path = path;
+    }
+
+    public static byte[][] tokens(String... tokens) {
+        return Arrays.stream(tokens).map(t -> t.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // files of /proc report no size, they're read until end of file, growing the buffer only the first time a file is larger than expected
+    public ProcFile read() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    larger.put(buffer.flip());
+                    buffer = larger;
+                }
+            }
+        }
+        pos = 0;
+        limit = buffer.position();
+        return this;
+    }
+
+    public boolean hasRemaining() {
+        return pos < limit;
+    }
+
+    // true if there are more tokens before the end of current line
+    public boolean hasToken() {
+        skipBlanks();
+        return pos < limit && buffer.get(pos) != '\n';
+    }
+
+    public void nextLine() {
+        while (pos < limit && buffer.get(pos++) != '\n') {
+            // skipping
+        }
+    }
+
+    public void skipToken() {
+        skipBlanks();
+        while (pos < limit && !isSeparator(buffer.get(pos))) {
+            pos++;
+        }
+        skipColon();
+    }
+
+    public void skipTokens(int count) {
+        for (int i = 0; i < count; i++) {
+            skipToken();
+        }
+    }
+
+    // index of the candidate equal to next token, which is consumed, or -1 leaving position untouched
+    public int matchToken(byte[][] candidates) {
+        skipBlanks();
+        int end = pos;
+        while (end < limit && !isSeparator(buffer.get(end))) {
+            end++;
+        }
+        for (int i = 0; i < candidates.length; i++) {
+            if (equals(candidates[i], end)) {
+                pos = end;
+                skipColon();
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // number following given prefix in next token (as 12 in "cpu12"), which is consumed, or -1 leaving position untouched
+    public int matchIndexedToken(byte[] prefix) {
+        skipBlanks();
+        int end = pos;
+        while (end < limit && !isSeparator(buffer.get(end))) {
+            end++;
+        }
+        if (end - pos <= prefix.length) {
+            return -1;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) {
+                return -1;
+            }
+        }
+        int ret = 0;
+        for (int i = pos + prefix.length; i < end; i++) {
+            if (!isDigit(buffer.get(i))) {
+                return -1;
+            }
+            ret = Math.addExact(Math.multiplyExact(ret, 10), buffer.get(i) - '0');
+        }
+        pos = end;
+        skipColon();
+        return ret;
+    }
+
+    public long nextLong() {
+        skipBlanks();
+        int start = pos;
+        long ret = 0;
+        while (pos < limit && isDigit(buffer.get(pos))) {
+            ret = Math.addExact(Math.multiplyExact(ret, 10), buffer.get(pos++) - '0');
+        }
+        if (pos == start || (pos < limit && !isSeparator(buffer.get(pos)))) {
+            throw newNumberFormatException(start);
+        }
+        skipColon();
+        return ret;
+    }
+
+    public BigDecimal nextDecimal() {
+        skipBlanks();
+        int start = pos;
+        long unscaled = 0;
+        int scale = -1;
+        while (pos < limit && (isDigit(buffer.get(pos)) || (buffer.get(pos) == '.' && scale < 0))) {
+            byte b = buffer.get(pos++);
+            if (b == '.') {
+                scale = 0;
+            } else {
+                unscaled = Math.addExact(Math.multiplyExact(unscaled, 10), b - '0');
+                scale = scale >= 0 ? scale + 1 : scale;
+            }
+        }
+        if (pos == start || (pos < limit && !isSeparator(buffer.get(pos)))) {
+            throw newNumberFormatException(start);
+        }
+        skipColon();
+        return BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    private boolean equals(byte[] token, int end) {
+        if (end - pos != token.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (buffer.get(pos + i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipBlanks() {
+        while (pos < limit && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+            pos++;
+        }
+    }
+
+    private void skipColon() {
+        if (pos < limit && buffer.get(pos) == ':') {
+            pos++;
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == ':';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    // only on malformed content, so building the message is not a concern
+    private NumberFormatException newNumberFormatException(int start) {
+        int end = start;
+        while (end < limit && !isSeparator(buffer.get(end))) {
+            end++;
+        }
+        byte[] token = new byte[end - start];
+        buffer.get(start, token);
+        return new NumberFormatException(String.format("Invalid number '%s' in %s", new String(token, StandardCharsets.US_ASCII), path));
+    }
+
+}
@@ -0,0 +1,12 @@
+package jcollectd.engine.collector;
+
+import java.io.IOException;
+import java.util.List;
+
+// runs a command returning its output lines, replaced by recorded outputs when collectors are verified on other systems
+@FunctionalInterface
+public interface ProcessRunner {
+
+    List<String> run(List<String> args) throws IOException, InterruptedException;
+
+}
@@ -2,12 +2,16 @@ package jcollectd.engine.collector.builder;
 
 import jcollectd.engine.collector.callable.Collector;
 
+import java.io.IOException;
+
 public interface CollectorBuilder {
 
     Collector buildLoadCollector();
 
     Collector buildCpuCollector();
 
+    Collector buildCoresCollector();
+
     Collector buildMemCollector();
 
     Collector buildNetCollector(String device);
@@ -16,6 +20,11 @@ public interface CollectorBuilder {
 
     Collector buildZfsCollector(String device);
 
-    Collector buildGpuCollector();
+    Collector buildGpuCollector() throws IOException, InterruptedException;
+
+    // called at the beginning of each cycle to read once what is shared among collectors, which are only started once it returns,
+    // so they see the whole snapshot without further synchronization
+    default void snapshot() throws IOException, InterruptedException {
+    }
 
 }
@@ -1,42 +1,75 @@
 package jcollectd.engine.collector.builder;
 
+import jcollectd.common.CommonUtils;
+import jcollectd.engine.collector.FreeBSDSnapshot;
+import jcollectd.engine.collector.NvidiaSmiSession;
+import jcollectd.engine.collector.ProcessRunner;
 import jcollectd.engine.collector.callable.*;
 
+import java.io.IOException;
+
 public class FreeBSDCollectorBuilder implements CollectorBuilder {
 
+    // one sysctl, netstat and iostat per cycle, for all probes
+    private final FreeBSDSnapshot snapshot;
+    // a single nvidia-smi for all GPU probes, started along with the first one
+    private NvidiaSmiSession nvidiaSmi;
+
+    public FreeBSDCollectorBuilder() {
+        this(CommonUtils::processRunner);
+    }
+
+    public FreeBSDCollectorBuilder(ProcessRunner runner) {
+        this.snapshot = new FreeBSDSnapshot(runner);
+    }
+
     @Override
     public Collector buildLoadCollector() {
-        return new FreeBSDLoadCollector();
+        return new FreeBSDLoadCollector(snapshot);
     }
 
     @Override
     public Collector buildCpuCollector() {
-        return new FreeBSDCpuCollector();
+        return new FreeBSDCpuCollector(snapshot);
+    }
+
+    @Override
+    public Collector buildCoresCollector() {
+        return new FreeBSDCoresCollector(snapshot);
     }
 
     @Override
     public Collector buildMemCollector() {
-        return new FreeBSDMemCollector();
+        return new FreeBSDMemCollector(snapshot);
     }
 
     @Override
     public Collector buildNetCollector(String device) {
-        return new FreeBSDNetCollector(device);
+        return new FreeBSDNetCollector(device, snapshot);
     }
 
     @Override
     public Collector buildDiskCollector(String device) {
-        return new FreeBSDDiskCollector(device);
+        return new FreeBSDDiskCollector(device, snapshot);
     }
 
     @Override
     public Collector buildZfsCollector(String device) {
-        return new FreeBSDZfsCollector(device);
+        return new FreeBSDZfsCollector(device, snapshot);
+    }
+
+    @Override
+    public Collector buildGpuCollector() throws IOException, InterruptedException {
+        if (nvidiaSmi == null) {
+            nvidiaSmi = new NvidiaSmiSession();
+            nvidiaSmi.start();
+        }
+        return new GpuCollector(nvidiaSmi);
     }
 
     @Override
-    public Collector buildGpuCollector() {
-        return new GpuCollector();
+    public void snapshot() throws IOException, InterruptedException {
+        snapshot.read();
     }
 
 }
@@ -1,9 +1,20 @@
 package jcollectd.engine.collector.builder;
 
+import jcollectd.engine.collector.DeviceSnapshot;
+import jcollectd.engine.collector.NvidiaSmiSession;
 import jcollectd.engine.collector.callable.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 public class LinuxCollectorBuilder implements CollectorBuilder {
 
+    // files listing all devices are shared by all probes of the same type, and only read if any is configured
+    private DeviceSnapshot netDev;
+    private DeviceSnapshot diskstats;
+    // a single nvidia-smi for all GPU probes, started along with the first one
+    private NvidiaSmiSession nvidiaSmi;
+
     @Override
     public Collector buildLoadCollector() {
         return new LinuxLoadCollector();
@@ -14,6 +25,11 @@ public class LinuxCollectorBuilder implements CollectorBuilder {
         return new LinuxCpuCollector();
     }
 
+    @Override
+    public Collector buildCoresCollector() {
+        return new LinuxCoresCollector();
+    }
+
     @Override
     public Collector buildMemCollector() {
         return new LinuxMemCollector();
@@ -21,12 +37,18 @@ public class LinuxCollectorBuilder implements CollectorBuilder {
 
     @Override
     public Collector buildNetCollector(String device) {
-        return new LinuxNetCollector(device);
+        if (netDev == null) {
+            netDev = LinuxNetCollector.newSnapshot(Path.of("/proc/net/dev"));
+        }
+        return new LinuxNetCollector(device, netDev);
     }
 
     @Override
     public Collector buildDiskCollector(String device) {
-        return new LinuxDiskCollector(device);
+        if (diskstats == null) {
+            diskstats = LinuxDiskCollector.newSnapshot(Path.of("/proc/diskstats"));
+        }
+        return new LinuxDiskCollector(device, diskstats);
     }
 
     @Override
@@ -35,8 +57,22 @@ public class LinuxCollectorBuilder implements CollectorBuilder {
     }
 
     @Override
-    public Collector buildGpuCollector() {
-        return new GpuCollector();
+    public Collector buildGpuCollector() throws IOException, InterruptedException {
+        if (nvidiaSmi == null) {
+            nvidiaSmi = new NvidiaSmiSession();
+            nvidiaSmi.start();
+        }
+        return new GpuCollector(nvidiaSmi);
+    }
+
+    @Override
+    public void snapshot() throws IOException {
+        if (netDev != null) {
+            netDev.read();
+        }
+        if (diskstats != null) {
+            diskstats.read();
+        }
     }
 
 }
@@ -0,0 +1,63 @@
+package jcollectd.engine.collector.callable;
+
+import jcollectd.common.dto.sample.CoresRawSample;
+import jcollectd.engine.collector.FreeBSDSnapshot;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Arrays;
+
+import static jcollectd.common.dto.sample.CoresRawSample.*;
+
+@Log4j2
+public class FreeBSDCoresCollector implements Collector {
+
+    private static final String CP_TIMES = "kern.cp_times";
+    // position of each value of a core among the ones collected, there is neither iowait nor steal time
+    private static final int[] CP_FIELDS = {USER, NICE, SYSTEM, IRQ, IDLE};
+
+    private final FreeBSDSnapshot snapshot;
+    // cores seen in previous cycle, so that times are read straight into an array of the right size
+    private int cores;
+
+    public FreeBSDCoresCollector(FreeBSDSnapshot snapshot) {
+        this.snapshot = snapshot;
+        snapshot.registerOids(CP_TIMES);
+    }
+
+    @Override
+    public CoresRawSample call() throws Exception {
+        /*
+            # sysctl kern.cp_times
+            kern.cp_times: 15737 0 2001 311 1222404 14420 0 1838 87 1224109
+
+            values are: user, nice, system, interrupt, idle, for each core one after the other
+         */
+        String value = snapshot.requireSysctl(CP_TIMES);
+        long[] times = new long[cores * FIELDS];
+        int n = 0;
+        long current = -1;
+        // parsed in place, instead of splitting a string for each value
+        for (int i = 0; i <= value.length(); i++) {
+            char c = i < value.length() ? value.charAt(i) : ' ';
+            if (c >= '0' && c <= '9') {
+                current = Math.max(current, 0) * 10 + (c - '0');
+                continue;
+            }
+            if (current < 0) {
+                continue;
+            }
+            int core = n / CP_FIELDS.length;
+            if ((core + 1) * FIELDS > times.length) {
+                times = Arrays.copyOf(times, (core + 1) * FIELDS);
+            }
+            times[core * FIELDS + CP_FIELDS[n % CP_FIELDS.length]] = current;
+            current = -1;
+            n++;
+        }
+        cores = times.length / FIELDS;
+        CoresRawSample ret = new CoresRawSample(times);
+        log.debug("Collected sample: {}", ret);
+        return ret;
+    }
+
+}
@@ -1,16 +1,23 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.CpuRawSample;
+import jcollectd.engine.collector.FreeBSDSnapshot;
 import lombok.extern.log4j.Log4j2;
 
 import java.util.Arrays;
-import java.util.List;
-
-import static jcollectd.common.CommonUtils.processRunner;
 
 @Log4j2
 public class FreeBSDCpuCollector implements Collector {
 
+    private static final String CP_TIME = "kern.cp_time";
+
+    private final FreeBSDSnapshot snapshot;
+
+    public FreeBSDCpuCollector(FreeBSDSnapshot snapshot) {
+        this.snapshot = snapshot;
+        snapshot.registerOids(CP_TIME);
+    }
+
     @Override
     public CpuRawSample call() throws Exception {
         /*
@@ -19,10 +26,9 @@ public class FreeBSDCpuCollector implements Collector {
 
             values are: user, nice, system, interrupt, idle
          */
-        List<String> stdout = processRunner(List.of("sysctl", "kern.cp_time"));
-        String[] split = stdout.getFirst().trim().split("\\s+");
-        long totalTime = Arrays.stream(split).skip(1).mapToLong(Long::parseLong).sum();
-        long idleTime = Long.parseLong(split[5]);
+        String[] split = snapshot.requireSysctl(CP_TIME).split("\\s+");
+        long totalTime = Arrays.stream(split).mapToLong(Long::parseLong).sum();
+        long idleTime = Long.parseLong(split[4]);
         CpuRawSample ret = new CpuRawSample(totalTime, idleTime);
         log.debug("Collected sample: {}", ret);
         return ret;
@@ -1,43 +1,34 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.DiskRawSample;
-import lombok.RequiredArgsConstructor;
+import jcollectd.engine.collector.FreeBSDSnapshot;
 import lombok.extern.log4j.Log4j2;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.List;
-import java.util.stream.Stream;
 
-import static jcollectd.common.CommonUtils.processRunner;
-
-@RequiredArgsConstructor
 @Log4j2
 public class FreeBSDDiskCollector implements Collector {
 
     private final String device;
+    private final List<String> devices;
+    private final FreeBSDSnapshot snapshot;
+
+    public FreeBSDDiskCollector(String device, FreeBSDSnapshot snapshot) {
+        this.device = device;
+        this.devices = List.of(device.split("\\+"));
+        this.snapshot = snapshot;
+        snapshot.registerDisks(devices);
+    }
 
     @Override
     public DiskRawSample call() throws Exception {
-        List<String> devices = List.of(device.split("\\+"));
-
-        /*
-            # iostat -Ix ada0
-                                    extended device statistics
-            device           r/i         w/i         kr/i         kw/i qlen   tsvc_t/i      sb/i
-            ada0       7919671.0   2973428.0 5905908945.5  119214504.0    0   118260.3   48234.8
-
-            relevant values are in kilobytes
-         */
-        List<String> stdout = processRunner(Stream.concat(Stream.of("iostat", "-Ix"), devices.stream()).toList());
         long read = 0, write = 0;
-        for (var line : stdout) {
-            String[] split = line.trim().split("\\s+");
-            if (!devices.contains(split[0])) {
-                continue;
+        for (String d : devices) {
+            long[] values = snapshot.getDisk(d);
+            if (values != null) {
+                read += values[0];
+                write += values[1];
             }
-            read += (new BigDecimal(split[3]).multiply(BigDecimal.valueOf(1024)).setScale(0, RoundingMode.HALF_UP)).longValue();
-            write += (new BigDecimal(split[4]).multiply(BigDecimal.valueOf(1024)).setScale(0, RoundingMode.HALF_UP)).longValue();
         }
         DiskRawSample ret = new DiskRawSample(device, read, write);
         log.debug("Collected sample: {}", ret);
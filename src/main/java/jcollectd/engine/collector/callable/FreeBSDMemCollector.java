@@ -1,15 +1,30 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.MemRawSample;
+import jcollectd.engine.collector.FreeBSDSnapshot;
 import lombok.extern.log4j.Log4j2;
 
 import java.util.List;
 
-import static jcollectd.common.CommonUtils.processRunner;
-
 @Log4j2
 public class FreeBSDMemCollector implements Collector {
 
+    private static final String PAGE_SIZE = "vm.stats.vm.v_page_size";
+    private static final String ACTIVE_COUNT = "vm.stats.vm.v_active_count";
+    private static final String INACTIVE_COUNT = "vm.stats.vm.v_inactive_count";
+    private static final String LAUNDRY_COUNT = "vm.stats.vm.v_laundry_count";
+    private static final String WIRE_COUNT = "vm.stats.vm.v_wire_count";
+    private static final String CACHE_COUNT = "vm.stats.vm.v_cache_count";
+    private static final String BUFSPACE = "vfs.bufspace";
+    private static final String ARC_SIZE = "kstat.zfs.misc.arcstats.size";
+
+    private final FreeBSDSnapshot snapshot;
+
+    public FreeBSDMemCollector(FreeBSDSnapshot snapshot) {
+        this.snapshot = snapshot;
+        snapshot.registerOids(PAGE_SIZE, ACTIVE_COUNT, INACTIVE_COUNT, LAUNDRY_COUNT, WIRE_COUNT, CACHE_COUNT, BUFSPACE, ARC_SIZE);
+    }
+
     @Override
     public MemRawSample call() throws Exception {
         long mem, cache, swap = 0;
@@ -25,30 +40,11 @@ public class FreeBSDMemCollector implements Collector {
             vfs.bufspace: 0
             kstat.zfs.misc.arcstats.size: 27319539336
 
-            sysctl should always return a number of rows equal to the number of values requested, even in case of unknown oid
+            requested along with the other probes, in a single sysctl call, unknown oids are reported as zero
             values from sysctl are in pages, usually 4096 bytes each, except bufspace and arc which are in bytes, ZFS module could be not loaded
          */
-        List<String> stdout1 = processRunner(List.of("sysctl", "vm.stats.vm.v_page_size", "vm.stats.vm.v_active_count", "vm.stats.vm.v_inactive_count", "vm.stats.vm.v_laundry_count", "vm.stats.vm.v_wire_count", "vm.stats.vm.v_cache_count", "vfs.bufspace", "kstat.zfs.misc.arcstats.size"));
-        long pageSize = 0, wireCount = 0, activeCount = 0, inactiveCount = 0, laundryCount = 0, cacheCount = 0, bufspace = 0, arc = 0;
-        for (var line : stdout1) {
-            if (line.startsWith("vm.stats.vm.v_page_size")) {
-                pageSize = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("vm.stats.vm.v_active_count")) {
-                activeCount = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("vm.stats.vm.v_inactive_count")) {
-                inactiveCount = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("vm.stats.vm.v_laundry_count")) {
-                laundryCount = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("vm.stats.vm.v_wire_count")) {
-                wireCount = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("vm.stats.vm.v_cache_count")) {
-                cacheCount = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("vfs.bufspace")) {
-                bufspace = Long.parseLong(line.split("\\s+")[1]);
-            } else if (line.startsWith("kstat.zfs.misc.arcstats.size") && !line.contains("unknown oid")) {
-                arc = Long.parseLong(line.split("\\s+")[1]);
-            }
-        }
+        long pageSize = get(PAGE_SIZE), activeCount = get(ACTIVE_COUNT), inactiveCount = get(INACTIVE_COUNT), laundryCount = get(LAUNDRY_COUNT);
+        long wireCount = get(WIRE_COUNT), cacheCount = get(CACHE_COUNT), bufspace = get(BUFSPACE), arc = get(ARC_SIZE);
         mem = activeCount * pageSize + inactiveCount * pageSize + laundryCount * pageSize + wireCount * pageSize - arc;
         cache = cacheCount * pageSize + bufspace + arc;
 
@@ -58,12 +54,12 @@ public class FreeBSDMemCollector implements Collector {
             Device          1K-blocks     Used    Avail Capacity
             /dev/mirror/swap  16777212        0 16777212     0%
 
-            relevant value is in kibibytes
+            relevant value is in kibibytes, with more than one device a total line is added, not to be counted twice
          */
-        List<String> stdout2 = processRunner(List.of("swapinfo", "-k"));
-        for (var line : stdout2) {
+        List<String> stdout = snapshot.getRunner().run(List.of("swapinfo", "-k"));
+        for (var line : stdout) {
             line = line.trim();
-            if (line.toLowerCase().startsWith("device")) {
+            if (line.isEmpty() || line.toLowerCase().startsWith("device") || line.startsWith("Total")) {
                 continue;
             }
             String[] split = line.split("\\s+");
@@ -75,4 +71,9 @@ public class FreeBSDMemCollector implements Collector {
         return ret;
     }
 
+    private long get(String oid) {
+        String value = snapshot.getSysctl(oid);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
 }
@@ -1,40 +1,26 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.NetRawSample;
-import lombok.RequiredArgsConstructor;
+import jcollectd.engine.collector.FreeBSDSnapshot;
 import lombok.extern.log4j.Log4j2;
 
-import java.util.List;
-
-import static jcollectd.common.CommonUtils.processRunner;
-
-@RequiredArgsConstructor
 @Log4j2
 public class FreeBSDNetCollector implements Collector {
 
     private final String device;
+    private final FreeBSDSnapshot snapshot;
+
+    public FreeBSDNetCollector(String device, FreeBSDSnapshot snapshot) {
+        this.device = device;
+        this.snapshot = snapshot;
+        snapshot.registerInterface(device);
+    }
 
     @Override
     public NetRawSample call() throws Exception {
-        /*
-            # netstat -b -n -I ix0
-            Name    Mtu Network      Address                Ipkts Ierrs Idrop        Ibytes      Opkts Oerrs        Obytes  Coll
-            ix0    1500 <Link#1>     80:61:5f:08:94:b8  354890649     0     0  359184917448  420246724     0  446709191018     0
-            ix0       - 10.0.0.0/24  10.0.0.2           265005016     -     -  351748830726  659391062     -  808764847758     -
-         */
-        List<String> stdout = processRunner(List.of("netstat", "-b", "-n", "-I", device));
-        long rx = 0, tx = 0;
-        for (var line : stdout) {
-            line = line.trim();
-            if (!line.startsWith(device) || !line.toLowerCase().contains("link")) {
-                continue;
-            }
-            String[] split = line.split("\\s+");
-            rx = Long.parseLong(split[7]);
-            tx = Long.parseLong(split[10]);
-            break;
-        }
-        NetRawSample ret = new NetRawSample(device, rx, tx);
+        // interfaces not found (e.g. not created yet) are reported as zero
+        long[] values = snapshot.getInterface(device);
+        NetRawSample ret = values != null ? new NetRawSample(device, values[0], values[1]) : new NetRawSample(device, 0, 0);
         log.debug("Collected sample: {}", ret);
         return ret;
     }
@@ -1,18 +1,22 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.DiskRawSample;
-import lombok.AllArgsConstructor;
+import jcollectd.engine.collector.FreeBSDSnapshot;
 import lombok.extern.log4j.Log4j2;
 
-import java.util.List;
-
-import static jcollectd.common.CommonUtils.processRunner;
-
-@AllArgsConstructor
 @Log4j2
 public class FreeBSDZfsCollector implements Collector {
 
     private final String device;
+    private final String oid;
+    private final FreeBSDSnapshot snapshot;
+
+    public FreeBSDZfsCollector(String device, FreeBSDSnapshot snapshot) {
+        this.device = device;
+        this.oid = "kstat.zfs." + device + ".dataset";
+        this.snapshot = snapshot;
+        snapshot.registerOids(oid);
+    }
 
     @Override
     public DiskRawSample call() throws Exception {
@@ -21,18 +25,12 @@ public class FreeBSDZfsCollector implements Collector {
             kstat.zfs.zroot.dataset.objset-0x15.nread: 39873806244
             kstat.zfs.zroot.dataset.objset-0x15.nwritten: 757338217
          */
-        List<String> stdout = processRunner(List.of("sysctl", "kstat.zfs." + device + ".dataset"));
         long read = 0, write = 0;
-        for (var line : stdout) {
-            line = line.trim();
-            if (!line.startsWith("kstat.zfs." + device + ".dataset") || (!line.contains(".nread:") && !line.contains(".nwritten:"))) {
-                continue;
-            }
-            String[] split = line.trim().split("\\s+");
-            if (line.contains(".nread:")) {
-                read += Long.parseLong(split[1]);
-            } else if (line.contains(".nwritten:")) {
-                write += Long.parseLong(split[1]);
+        for (var entry : snapshot.getSysctlSubtree(oid).entrySet()) {
+            if (entry.getKey().endsWith(".nread")) {
+                read += Long.parseLong(entry.getValue());
+            } else if (entry.getKey().endsWith(".nwritten")) {
+                write += Long.parseLong(entry.getValue());
             }
         }
         DiskRawSample ret = new DiskRawSample(device, read, write);
@@ -1,31 +1,26 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.GpuRawSample;
-import lombok.AllArgsConstructor;
+import jcollectd.engine.collector.NvidiaSmiSession;
 import lombok.extern.log4j.Log4j2;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.List;
+import java.util.Collection;
 
-import static jcollectd.common.CommonUtils.processRunner;
-
-@AllArgsConstructor
 @Log4j2
 public class GpuCollector implements Collector {
 
+    private final NvidiaSmiSession session;
+
+    public GpuCollector(NvidiaSmiSession session) {
+        this.session = session;
+    }
+
     @Override
     public GpuRawSample call() throws Exception {
-        /*
-            # nvidia-smi --format=csv,noheader,nounits --query-gpu=utilization.gpu
-            0
-            0
-         */
-        List<String> stdout = processRunner(List.of("nvidia-smi", "--format=csv,noheader,nounits", "--query-gpu=utilization.gpu"));
-        List<BigDecimal> augends = stdout.stream().filter(i -> !i.isBlank()).map(BigDecimal::new).toList();
-        if (augends.isEmpty()) {
-            return new GpuRawSample(BigDecimal.ZERO);
-        }
+        // average utilization of all GPUs, as last reported by the running nvidia-smi
+        Collection<BigDecimal> augends = session.getLatest().values();
         BigDecimal sum = BigDecimal.ZERO;
         for (var augend : augends) {
             sum = sum.add(augend);
@@ -0,0 +1,64 @@
+package jcollectd.engine.collector.callable;
+
+import jcollectd.common.dto.sample.CoresRawSample;
+import jcollectd.engine.collector.ProcFile;
+import lombok.extern.log4j.Log4j2;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static jcollectd.common.dto.sample.CoresRawSample.FIELDS;
+
+@Log4j2
+public class LinuxCoresCollector implements Collector {
+
+    private static final byte[] CPU = ProcFile.tokens("cpu")[0];
+
+    private final ProcFile stat;
+    // cores seen in previous cycle, so that times are read straight into an array of the right size
+    private int cores;
+
+    public LinuxCoresCollector() {
+        this(Path.of("/proc/stat"));
+    }
+
+    // ProcParserBenchmark measures a recorded /proc/stat of a 256 cores host
+    public LinuxCoresCollector(Path stat) {
+        this.stat = new ProcFile(stat);
+    }
+
+    @Override
+    public CoresRawSample call() throws Exception {
+        /*
+            # cat /proc/stat
+            cpu  137 24 4986 51841700 99228 0 1756 0 0 0
+            cpu0 68 12 2493 25920850 49614 0 878 0 0 0
+            cpu1 69 12 2493 25920850 49614 0 878 0 0 0
+            intr 200215 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 1 1 1 0 0 0 0 557 28 0 58 1 33708 1 ...
+
+            values are: user, nice, system, idle, iowait, irq, softirq, steal, then guest times already included in user and nice
+            aggregated times come first, then cores online, the rest of the file is not needed
+         */
+        long[] times = new long[cores * FIELDS];
+        stat.read().nextLine();
+        while (stat.hasRemaining()) {
+            int core = stat.matchIndexedToken(CPU);
+            if (core < 0) {
+                break;
+            }
+            // only grown when a core with a higher number comes online, cores going offline keep their slot
+            if ((core + 1) * FIELDS > times.length) {
+                times = Arrays.copyOf(times, (core + 1) * FIELDS);
+            }
+            for (int i = 0; i < FIELDS && stat.hasToken(); i++) {
+                times[core * FIELDS + i] = stat.nextLong();
+            }
+            stat.nextLine();
+        }
+        cores = times.length / FIELDS;
+        CoresRawSample ret = new CoresRawSample(times);
+        log.debug("Collected sample: {}", ret);
+        return ret;
+    }
+
+}
@@ -1,15 +1,25 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.CpuRawSample;
+import jcollectd.engine.collector.ProcFile;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.Arrays;
+import java.nio.file.Path;
 
 @Log4j2
 public class LinuxCpuCollector implements Collector {
 
+    private final ProcFile stat;
+
+    public LinuxCpuCollector() {
+        this(Path.of("/proc/stat"));
+    }
+
+    // ProcParserBenchmark parses a recorded /proc/stat
+    public LinuxCpuCollector(Path stat) {
+        this.stat = new ProcFile(stat);
+    }
+
     @Override
     public CpuRawSample call() throws Exception {
         /*
@@ -18,14 +28,19 @@ public class LinuxCpuCollector implements Collector {
 
             values are: user, nice, system, idle, iowait, irq, softirq
          */
-        try (BufferedReader br = new BufferedReader(new FileReader("/proc/stat"))) {
-            String[] split = br.readLine().trim().split("\\s+");
-            long totalTime = Arrays.stream(split).skip(1).mapToLong(Long::parseLong).sum();
-            long idleTime = Long.parseLong(split[4]) + Long.parseLong(split[5]);
-            CpuRawSample ret = new CpuRawSample(totalTime, idleTime);
-            log.debug("Collected sample: {}", ret);
-            return ret;
+        stat.read().skipToken();
+        long totalTime = 0, idleTime = 0;
+        for (int i = 0; stat.hasToken(); i++) {
+            long value = stat.nextLong();
+            totalTime += value;
+            // idle and iowait
+            if (i == 3 || i == 4) {
+                idleTime += value;
+            }
         }
+        CpuRawSample ret = new CpuRawSample(totalTime, idleTime);
+        log.debug("Collected sample: {}", ret);
+        return ret;
     }
 
 }
@@ -1,30 +1,38 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.LoadRawSample;
+import jcollectd.engine.collector.ProcFile;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 
 @Log4j2
 public class LinuxLoadCollector implements Collector {
 
+    private final ProcFile loadavg;
+
+    public LinuxLoadCollector() {
+        this(Path.of("/proc/loadavg"));
+    }
+
+    public LinuxLoadCollector(Path loadavg) {
+        this.loadavg = new ProcFile(loadavg);
+    }
+
     @Override
     public LoadRawSample call() throws Exception {
         /*
             # cat /proc/loadavg
             0.34 0.24 0.20 1/144 40571
          */
-        try (BufferedReader br = new BufferedReader(new FileReader("/proc/loadavg"))) {
-            String[] split = br.readLine().trim().split("\\s+");
-            BigDecimal load1 = new BigDecimal(split[0]);
-            BigDecimal load5 = new BigDecimal(split[1]);
-            BigDecimal load15 = new BigDecimal(split[2]);
-            LoadRawSample ret = new LoadRawSample(load1, load5, load15);
-            log.debug("Collected sample: {}", ret);
-            return ret;
-        }
+        loadavg.read();
+        BigDecimal load1 = loadavg.nextDecimal();
+        BigDecimal load5 = loadavg.nextDecimal();
+        BigDecimal load15 = loadavg.nextDecimal();
+        LoadRawSample ret = new LoadRawSample(load1, load5, load15);
+        log.debug("Collected sample: {}", ret);
+        return ret;
     }
 
 }
@@ -1,16 +1,33 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.MemRawSample;
+import jcollectd.engine.collector.ProcFile;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 @Log4j2
 public class LinuxMemCollector implements Collector {
 
+    private static final byte[][] MEMINFO_KEYS = ProcFile.tokens("MemTotal", "MemAvailable", "Buffers", "Cached", "SReclaimable", "SwapTotal", "SwapFree");
+    private static final byte[][] ARCSTATS_KEYS = ProcFile.tokens("size");
+
+    private final ProcFile meminfo;
+    private final ProcFile arcstats;
+    // values of meminfo keys, in the same order
+    private final long[] values = new long[MEMINFO_KEYS.length];
+
+    public LinuxMemCollector() {
+        this(Path.of("/proc/meminfo"), Path.of("/proc/spl/kstat/zfs/arcstats"));
+    }
+
+    public LinuxMemCollector(Path meminfo, Path arcstats) {
+        this.meminfo = new ProcFile(meminfo);
+        this.arcstats = new ProcFile(arcstats);
+    }
+
     @Override
     public MemRawSample call() throws Exception {
         long mem, cache, swap = 0;
@@ -27,30 +44,18 @@ public class LinuxMemCollector implements Collector {
 
             values are reported in kilobytes but actually in kibibyte
          */
-        try (BufferedReader br = new BufferedReader(new FileReader("/proc/meminfo"))) {
-            long memTotal = 0, memAvailable = 0, buffers = 0, cached = 0, sReclaimable = 0, swapTotal = 0, swapFree = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("MemTotal")) {
-                    memTotal = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                } else if (line.startsWith("MemAvailable")) {
-                    memAvailable = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                } else if (line.startsWith("Buffers")) {
-                    buffers = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                } else if (line.startsWith("Cached")) {
-                    cached = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                } else if (line.startsWith("SReclaimable")) {
-                    sReclaimable = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                } else if (line.startsWith("SwapTotal")) {
-                    swapTotal = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                } else if (line.startsWith("SwapFree")) {
-                    swapFree = Long.parseLong(line.split("\\s+")[1]) * 1024L;
-                }
+        meminfo.read();
+        Arrays.fill(values, 0);
+        while (meminfo.hasRemaining()) {
+            int key = meminfo.matchToken(MEMINFO_KEYS);
+            if (key >= 0) {
+                values[key] = meminfo.nextLong() * 1024L;
             }
-            mem = memTotal - memAvailable;
-            cache = cached + buffers + sReclaimable;
-            swap = swapTotal - swapFree;
+            meminfo.nextLine();
         }
+        mem = values[0] - values[1];
+        cache = values[3] + values[2] + values[4];
+        swap = values[5] - values[6];
 
         /*
             # cat /proc/spl/kstat/zfs/arcstats
@@ -58,17 +63,17 @@ public class LinuxMemCollector implements Collector {
             ...
             size                            4    33650304736
          */
-        if (Files.isReadable(Path.of("/proc/spl/kstat/zfs/arcstats"))) {
-            try (BufferedReader br = new BufferedReader(new FileReader("/proc/spl/kstat/zfs/arcstats"))) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (line.startsWith("size")) {
-                        long arc = Long.parseLong(line.split("\\s+")[2]);
-                        // because of how ZFS on Linux is implemented, the ARC memory behaves like cache memory, but is aggregated by the kernel as ordinary memory allocations
-                        mem -= arc;
-                        cache += arc;
-                    }
+        if (Files.isReadable(arcstats.getPath())) {
+            arcstats.read();
+            while (arcstats.hasRemaining()) {
+                if (arcstats.matchToken(ARCSTATS_KEYS) == 0) {
+                    arcstats.skipToken();
+                    long arc = arcstats.nextLong();
+                    // because of how ZFS on Linux is implemented, the ARC memory behaves like cache memory, but is aggregated by the kernel as ordinary memory allocations
+                    mem -= arc;
+                    cache += arc;
                 }
+                arcstats.nextLine();
             }
         }
 
@@ -1,44 +1,47 @@
 package jcollectd.engine.collector.callable;
 
 import jcollectd.common.dto.sample.NetRawSample;
-import lombok.RequiredArgsConstructor;
+import jcollectd.engine.collector.DeviceSnapshot;
 import lombok.extern.log4j.Log4j2;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.nio.file.Path;
 
-@RequiredArgsConstructor
 @Log4j2
 public class LinuxNetCollector implements Collector {
 
+    /*
+        # cat /proc/net/dev
+        Inter-|   Receive                                                |  Transmit
+         face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed
+            lo:       0       0    0    0    0     0          0         0        0       0    0    0    0     0       0          0
+        enp0s3:  305024    3127    0    0    0     0          0         0   377114    2893    0    0    0     0       0          0
+
+        1st field is interface name, 2nd field is bytes received, 10th field is bytes transmitted
+     */
+    private static final int NAME_FIELD = 0;
+    private static final int RX_FIELD = 1;
+    private static final int TX_FIELD = 9;
+
     private final String device;
+    private final DeviceSnapshot snapshot;
+    private final int slot;
+
+    public LinuxNetCollector(String device, DeviceSnapshot snapshot) {
+        this.device = device;
+        this.snapshot = snapshot;
+        // interface name must match exactly, so eth1 is not mistaken for eth10
+        this.slot = snapshot.register(device);
+    }
+
+    public static DeviceSnapshot newSnapshot(Path netDev) {
+        return new DeviceSnapshot(netDev, NAME_FIELD, RX_FIELD, TX_FIELD);
+    }
 
     @Override
-    public NetRawSample call() throws Exception {
-        /*
-            # cat /proc/net/dev
-            Inter-|   Receive                                                |  Transmit
-             face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed
-                lo:       0       0    0    0    0     0          0         0        0       0    0    0    0     0       0          0
-            enp0s3:  305024    3127    0    0    0     0          0         0   377114    2893    0    0    0     0       0          0
-         */
-        try (BufferedReader br = new BufferedReader(new FileReader("/proc/net/dev"))) {
-            long rx = 0, tx = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (!line.startsWith(device)) {
-                    continue;
-                }
-                String[] split = line.trim().split("\\s+");
-                rx = Long.parseLong(split[1]);
-                tx = Long.parseLong(split[9]);
-                break;
-            }
-            NetRawSample ret = new NetRawSample(device, rx, tx);
-            log.debug("Collected sample: {}", ret);
-            return ret;
-        }
+    public NetRawSample call() {
+        NetRawSample ret = new NetRawSample(device, snapshot.get(slot, 0), snapshot.get(slot, 1));
+        log.debug("Collected sample: {}", ret);
+        return ret;
     }
 
 }
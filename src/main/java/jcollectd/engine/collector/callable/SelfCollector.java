@@ -0,0 +1,22 @@
+package jcollectd.engine.collector.callable;
+
+import jcollectd.common.dto.sample.SelfRawSample;
+import jcollectd.engine.MetricsRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+@AllArgsConstructor
+@Log4j2
+public class SelfCollector implements Collector {
+
+    private final MetricsRegistry registry;
+
+    @Override
+    public SelfRawSample call() {
+        // running along with other collectors, so the current cycle is not over yet, and the previous one is reported
+        SelfRawSample ret = new SelfRawSample(registry.histogram(MetricsRegistry.COLLECT).getLast(), registry.histogram(MetricsRegistry.PERSIST).getLast());
+        log.debug("Collected sample: {}", ret);
+        return ret;
+    }
+
+}
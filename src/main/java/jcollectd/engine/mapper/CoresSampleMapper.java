@@ -0,0 +1,46 @@
+package jcollectd.engine.mapper;
+
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.common.dto.sample.CoresComputedSample;
+import jcollectd.common.dto.sample.CoresRawSample;
+
+import java.time.Instant;
+
+import static jcollectd.common.dto.sample.CoresComputedSample.METRICS;
+import static jcollectd.common.dto.sample.CoresRawSample.*;
+
+public class CoresSampleMapper implements SampleMapper<CoresRawSample> {
+
+    @Override
+    public ComputedSample map(Instant curTms, CoresRawSample curSample, Instant prevTms, CoresRawSample prevSample) {
+        long[] cur = curSample.getTimes();
+        long[] prev = prevSample.getTimes();
+        // computed on primitives, hundreds of cores are a few thousands values each cycle
+        double[] usage = new double[curSample.getCores() * METRICS];
+        long[] diff = new long[FIELDS];
+        for (int core = 0; core < Math.min(curSample.getCores(), prevSample.getCores()); core++) {
+            long prevTotal = 0, diffTotal = 0;
+            for (int i = 0; i < FIELDS; i++) {
+                prevTotal += prev[core * FIELDS + i];
+                // counters should be monotonic, but better safe than sorry
+                diff[i] = Math.max(cur[core * FIELDS + i] - prev[core * FIELDS + i], 0);
+                diffTotal += diff[i];
+            }
+            // cores offline in either cycle have nothing to compare with, and are reported as idle
+            if (prevTotal == 0 || diffTotal == 0) {
+                continue;
+            }
+            usage[core * METRICS] = percent(diff[USER] + diff[NICE], diffTotal);
+            usage[core * METRICS + 1] = percent(diff[SYSTEM] + diff[IRQ] + diff[SOFTIRQ], diffTotal);
+            usage[core * METRICS + 2] = percent(diff[IOWAIT], diffTotal);
+            usage[core * METRICS + 3] = percent(diff[STEAL], diffTotal);
+        }
+        return new CoresComputedSample(curTms, usage);
+    }
+
+    private static double percent(long diff, long diffTotal) {
+        // same precision of aggregated CPU usage
+        return Math.round(diff * 1000.0 / diffTotal) / 10.0;
+    }
+
+}
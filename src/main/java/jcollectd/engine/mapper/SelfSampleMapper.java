@@ -0,0 +1,22 @@
+package jcollectd.engine.mapper;
+
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.common.dto.sample.SelfComputedSample;
+import jcollectd.common.dto.sample.SelfRawSample;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static java.math.RoundingMode.HALF_UP;
+
+public class SelfSampleMapper implements SampleMapper<SelfRawSample> {
+
+    @Override
+    public ComputedSample map(Instant curTms, SelfRawSample curSample, Instant prevTms, SelfRawSample prevSample) {
+        // convert to milliseconds
+        return new SelfComputedSample(curTms,
+                BigDecimal.valueOf(curSample.getCollectElapsed(), 6).setScale(2, HALF_UP),
+                BigDecimal.valueOf(curSample.getPersistElapsed(), 6).setScale(2, HALF_UP));
+    }
+
+}
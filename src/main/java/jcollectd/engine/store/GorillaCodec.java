@@ -0,0 +1,254 @@
+package jcollectd.engine.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// compressed block format, as described in Facebook's Gorilla paper: timestamps as delta of deltas, values as xor with the previous one
+// block layout: samples count, columns count, then a bit stream of rows, each one made of timestamp followed by all values
+public class GorillaCodec {
+
+    public static final int BLOCK_SIZE = 1024;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private GorillaCodec() {
+    }
+
+    public static class Encoder {
+
+        private final int columns;
+        private final BitOutput out = new BitOutput();
+        private int count;
+        private long prevTms;
+        private long prevDelta;
+        private final long[] prevValues;
+        private final int[] prevLeading;
+        private final int[] prevTrailing;
+
+        public Encoder(int columns) {
+            this.columns = columns;
+            prevValues = new long[columns];
+            prevLeading = new int[columns];
+            prevTrailing = new int[columns];
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void append(long sampleTms, double[] values) {
+            if (count == 0) {
+                // first row is stored verbatim
+                out.write(sampleTms, 64);
+                for (int i = 0; i < columns; i++) {
+                    prevValues[i] = Double.doubleToLongBits(values[i]);
+                    prevLeading[i] = -1;
+                    out.write(prevValues[i], 64);
+                }
+            } else {
+                long delta = sampleTms - prevTms;
+                writeTimestamp(delta - prevDelta);
+                prevDelta = delta;
+                for (int i = 0; i < columns; i++) {
+                    writeValue(i, Double.doubleToLongBits(values[i]));
+                }
+            }
+            prevTms = sampleTms;
+            count++;
+        }
+
+        public byte[] toByteArray() {
+            byte[] bits = out.toByteArray();
+            return ByteBuffer.allocate(HEADER_SIZE + bits.length).putInt(count).putInt(columns).put(bits).array();
+        }
+
+        private void writeTimestamp(long dod) {
+            // samples are regularly spaced, so most of the time delta of deltas is zero and takes a single bit
+            if (dod == 0) {
+                out.write(0b0, 1);
+            } else if (dod >= -64 && dod <= 63) {
+                out.write(0b10, 2);
+                out.write(dod, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                out.write(0b110, 3);
+                out.write(dod, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                out.write(0b1110, 4);
+                out.write(dod, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(dod, 64);
+            }
+        }
+
+        private void writeValue(int column, long value) {
+            long xor = value ^ prevValues[column];
+            prevValues[column] = value;
+            if (xor == 0) {
+                out.write(0b0, 1);
+                return;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading[column] >= 0 && leading >= prevLeading[column] && trailing >= prevTrailing[column]) {
+                // meaningful bits fit in the same window of the previous value
+                out.write(0b10, 2);
+                out.write(xor >>> prevTrailing[column], 64 - prevLeading[column] - prevTrailing[column]);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                out.write(0b11, 2);
+                out.write(leading, 5);
+                out.write(meaningful - 1, 6);
+                out.write(xor >>> trailing, meaningful);
+                prevLeading[column] = leading;
+                prevTrailing[column] = trailing;
+            }
+        }
+
+    }
+
+    public static class Decoder {
+
+        private final BitInput in;
+        private final int count;
+        private final long[] prevValues;
+        private final int[] prevLeading;
+        private final int[] prevTrailing;
+        private final double[] values;
+        private int read;
+        private long sampleTms;
+        private long prevDelta;
+
+        public Decoder(ByteBuffer buffer, int offset) {
+            // header is read bit-wise as well, so it doesn't depend on byte order of the buffer
+            in = new BitInput(buffer, offset);
+            count = (int) in.read(32);
+            int columns = (int) in.read(32);
+            prevValues = new long[columns];
+            prevLeading = new int[columns];
+            prevTrailing = new int[columns];
+            values = new double[columns];
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean next() {
+            if (read == count) {
+                return false;
+            }
+            if (read == 0) {
+                sampleTms = in.read(64);
+                for (int i = 0; i < values.length; i++) {
+                    prevValues[i] = in.read(64);
+                }
+            } else {
+                prevDelta += readTimestamp();
+                sampleTms += prevDelta;
+                for (int i = 0; i < values.length; i++) {
+                    readValue(i);
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Double.longBitsToDouble(prevValues[i]);
+            }
+            read++;
+            return true;
+        }
+
+        public long getTimestamp() {
+            return sampleTms;
+        }
+
+        // values array is reused for every row, callers must copy what they need
+        public double[] getValues() {
+            return values;
+        }
+
+        private long readTimestamp() {
+            if (in.read(1) == 0) {
+                return 0;
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(7);
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(9);
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(12);
+            }
+            return in.read(64);
+        }
+
+        private void readValue(int column) {
+            if (in.read(1) == 0) {
+                return;
+            }
+            if (in.read(1) == 1) {
+                prevLeading[column] = (int) in.read(5);
+                prevTrailing[column] = 64 - prevLeading[column] - ((int) in.read(6) + 1);
+            }
+            int meaningful = 64 - prevLeading[column] - prevTrailing[column];
+            prevValues[column] ^= in.read(meaningful) << prevTrailing[column];
+        }
+
+    }
+
+    private static class BitOutput {
+
+        private byte[] buffer = new byte[256];
+        private long position;
+
+        private void write(long value, int bits) {
+            while (bits > 0) {
+                int index = (int) (position >>> 3);
+                if (index == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int free = 8 - (int) (position & 7);
+                int take = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+                buffer[index] |= (byte) (chunk << (free - take));
+                position += take;
+                bits -= take;
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (int) ((position + 7) >>> 3));
+        }
+
+    }
+
+    private static class BitInput {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private long position;
+
+        private BitInput(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        private long read(int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int available = 8 - (int) (position & 7);
+                int take = Math.min(available, bits);
+                int b = buffer.get(offset + (int) (position >>> 3)) & 0xFF;
+                value = (value << take) | ((b >>> (available - take)) & ((1 << take) - 1));
+                position += take;
+                bits -= take;
+            }
+            return value;
+        }
+
+        private long readSigned(int bits) {
+            return read(bits) << (64 - bits) >> (64 - bits);
+        }
+
+    }
+
+}
@@ -0,0 +1,527 @@
+package jcollectd.engine.store;
+
+import jcollectd.common.dto.config.AppConfig;
+import jcollectd.common.dto.config.Probe;
+import jcollectd.common.dto.config.Rollup;
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.engine.SampleTable;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.*;
+
+@Log4j2
+public class MappedSampleStore implements SampleStore {
+
+    private static final Path STORE_PATH = Path.of("samples");
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String SEALED_SUFFIX = ".blk";
+    private static final Pattern SERIES_PATTERN = Pattern.compile("^tb_[a-z]+_(?:sample|rollup_(\\d+))(?:-.+)?$");
+    private static final Duration SEGMENT_SPAN = Duration.ofDays(1);
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 20;
+
+    // segment file layout: fixed size header, then timestamps column, then one column per value, each one sized for the whole segment capacity
+    private static final int SEGMENT_MAGIC = 0x4A435331;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int COLUMNS_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+
+    // sealed segment layout: fixed size header, then compressed blocks, each one preceded by its last timestamp and length
+    private static final int SEALED_MAGIC = 0x4A434231;
+    private static final int SEALED_HEADER_SIZE = 32;
+    private static final int LAST_TMS_OFFSET = 16;
+    private static final int BLOCK_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final AppConfig config;
+    // each series is a device (if any) of a sample table or rollup, stored in its own directory
+    private final Map<String, Series> series = new HashMap<>();
+    // single writer appends while readers scan, segments are created and dropped only under write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public MappedSampleStore(AppConfig config) throws IOException {
+        this.config = config;
+        Files.createDirectories(STORE_PATH);
+
+        // discovering existing series and their segments
+        int segments = 0;
+        try (var dirs = Files.newDirectoryStream(STORE_PATH, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                Matcher m = SERIES_PATTERN.matcher(dir.getFileName().toString());
+                if (!m.matches()) {
+                    log.warn("Ignoring unknown directory {}", dir);
+                    continue;
+                }
+                Series s = m.group(1) == null ? newSeries(dir, null) : newSeries(dir, Duration.ofSeconds(Long.parseLong(m.group(1))));
+                s.open();
+                series.put(dir.getFileName().toString(), s);
+                segments += s.sealed.size() + (s.active != null ? 1 : 0);
+            }
+        }
+        log.info("Sample store opened with {} series and {} segments", series.size(), segments);
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            // mapped pages are written back by the kernel anyway, forcing them only makes sure they hit the disk before exiting
+            for (Series s : series.values()) {
+                if (s.active != null) {
+                    s.active.buffer.force();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        // files are only deleted under write lock
+        lock.readLock().lock();
+        try (var files = Files.walk(STORE_PATH)) {
+            long ret = 0;
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                ret += Files.size(file);
+            }
+            return ret;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void persistSamples(List<ComputedSample> samples, Instant collectTms, Instant deleteBefore) throws IOException {
+        lock.writeLock().lock();
+        try {
+            // retention is enforced by dropping whole segments, once they are entirely older than the retention window of their series
+            for (Series s : series.values()) {
+                s.expire((s.retention == null ? deleteBefore : collectTms.minus(s.retention)).getEpochSecond());
+            }
+
+            for (var sample : samples) {
+                SampleTable table = SampleTable.of(sample);
+                String device = SampleTable.getDevice(sample);
+                long sampleTms = SampleTable.getSampleTms(sample).getEpochSecond();
+                double[] row = SampleTable.getValues(sample);
+                getSeries(table.getTableName(), device, null).put(sampleTms, row);
+
+                // rollup buckets can only be open at the tail of their series, so they're merged in place
+                for (Rollup rollup : config.getRollups()) {
+                    long resolution = rollup.getResolution().getSeconds();
+                    long bucketTms = Math.floorDiv(sampleTms, resolution) * resolution;
+                    Series rs = getSeries(table.getRollupName(rollup.getResolution()), device, rollup.getResolution());
+                    double[] bucket = new double[1 + 3 * row.length];
+                    if (rs.getLast(bucketTms, bucket)) {
+                        bucket[0]++;
+                        for (int i = 0; i < row.length; i++) {
+                            bucket[1 + 3 * i] = Math.min(bucket[1 + 3 * i], row[i]);
+                            bucket[2 + 3 * i] += row[i];
+                            bucket[3 + 3 * i] = Math.max(bucket[3 + 3 * i], row[i]);
+                        }
+                    } else {
+                        bucket[0] = 1;
+                        for (int i = 0; i < row.length; i++) {
+                            bucket[1 + 3 * i] = row[i];
+                            bucket[2 + 3 * i] = row[i];
+                            bucket[3 + 3 * i] = row[i];
+                        }
+                    }
+                    rs.put(bucketTms, bucket);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void readSamples(List<Probe> probes, Instant from, Instant to, Duration resolution, SampleHandler handler) throws IOException {
+        // all probes are read under the same lock, so they share a consistent view of the store
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < probes.size(); i++) {
+                SampleTable table = SampleTable.of(probes.get(i).getType());
+                String name = resolution == null ? table.getTableName() : table.getRollupName(resolution);
+                Series s = series.get(getSeriesName(name, table.isWithDevice() ? probes.get(i).getDevice() : null));
+                if (s == null) {
+                    continue;
+                }
+                // rollups are returned as average value of each bucket, starting from the ones not older than given instant
+                readSeries(s, i, resolution == null ? from.getEpochSecond() : from.getEpochSecond() - 1, to == null ? Long.MAX_VALUE : to.getEpochSecond(), resolution != null, handler);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void readSeries(Series s, int idx, long after, long until, boolean rollup, SampleHandler handler) throws IOException {
+        // sealed segments are keyed by their first timestamp, scan starts from the one containing the first requested sample
+        Long start = s.sealed.floorKey(after);
+        for (SealedSegment segment : (start == null ? s.sealed : s.sealed.tailMap(start, true)).headMap(until, true).values()) {
+            double[] values = new double[rollup ? (segment.columns - 1) / 3 : segment.columns];
+            int offset = SEALED_HEADER_SIZE;
+            while (offset < segment.buffer.limit()) {
+                long blockLastTms = segment.buffer.getLong(offset);
+                int length = segment.buffer.getInt(offset + Long.BYTES);
+                // whole blocks older than requested window are skipped without decoding them
+                if (blockLastTms > after) {
+                    var decoder = new GorillaCodec.Decoder(segment.buffer, offset + BLOCK_HEADER_SIZE);
+                    while (decoder.next()) {
+                        if (decoder.getTimestamp() > until) {
+                            return;
+                        }
+                        if (decoder.getTimestamp() > after) {
+                            handler.accept(idx, decoder.getTimestamp(), toValues(decoder.getValues(), rollup, values));
+                        }
+                    }
+                }
+                offset += BLOCK_HEADER_SIZE + length;
+            }
+        }
+
+        Segment segment = s.active;
+        if (segment == null) {
+            return;
+        }
+        // values array is reused for every row, handlers must copy what they need
+        double[] row = new double[segment.columns];
+        double[] values = new double[rollup ? (segment.columns - 1) / 3 : segment.columns];
+        for (int n = segment.search(after); n < segment.count && segment.getTimestamp(n) <= until; n++) {
+            segment.read(n, row);
+            handler.accept(idx, segment.getTimestamp(n), toValues(row, rollup, values));
+        }
+    }
+
+    private static double[] toValues(double[] row, boolean rollup, double[] values) {
+        if (!rollup) {
+            return row;
+        }
+        // rollup rows are made of count, then minimum, sum and maximum of each column
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row[2 + 3 * i] / row[0];
+        }
+        return values;
+    }
+
+    private Series getSeries(String name, String device, Duration resolution) throws IOException {
+        String seriesName = getSeriesName(name, device);
+        Series s = series.get(seriesName);
+        if (s == null) {
+            Path dir = STORE_PATH.resolve(seriesName);
+            Files.createDirectories(dir);
+            s = newSeries(dir, resolution);
+            series.put(seriesName, s);
+        }
+        return s;
+    }
+
+    private Series newSeries(Path dir, Duration resolution) {
+        // segments span about one day, so that space is given back with the same granularity of sqlite partitions
+        int capacity = Math.clamp(SEGMENT_SPAN.dividedBy(resolution == null ? config.getInterval() : resolution), MIN_SEGMENT_CAPACITY, MAX_SEGMENT_CAPACITY);
+        if (resolution == null) {
+            return new Series(dir, null, capacity);
+        }
+        // rollups no longer configured are kept with the same retention of raw samples, until they expire
+        Duration retention = config.getRollups().stream().filter(r -> r.getResolution().equals(resolution)).map(Rollup::getRetention).findFirst().orElse(config.getRetention());
+        return new Series(dir, retention, capacity);
+    }
+
+    private static String getSeriesName(String name, String device) {
+        // devices could be aggregates or datasets, containing characters not allowed in file names
+        return device == null ? name : name + "-" + URLEncoder.encode(device, UTF_8);
+    }
+
+    private static class Series {
+
+        private final Path dir;
+        // retention of rollups, raw samples follow the one requested by the writer
+        private final Duration retention;
+        private final int capacity;
+        // older segments are compressed and read-only, samples are appended only to the active one
+        private final NavigableMap<Long, SealedSegment> sealed = new TreeMap<>();
+        private Segment active;
+
+        private Series(Path dir, Duration retention, int capacity) {
+            this.dir = dir;
+            this.retention = retention;
+            this.capacity = capacity;
+        }
+
+        private void open() throws IOException {
+            NavigableMap<Long, Path> segments = new TreeMap<>();
+            try (var files = Files.newDirectoryStream(dir, "*.{seg,blk}")) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    try {
+                        long firstTms = Long.parseLong(fileName.substring(0, fileName.indexOf('.')));
+                        if (fileName.endsWith(SEALED_SUFFIX)) {
+                            sealed.put(firstTms, SealedSegment.open(file));
+                        } else {
+                            segments.put(firstTms, file);
+                        }
+                    } catch (NumberFormatException | IOException ex) {
+                        log.warn("Ignoring invalid segment {}: {}", file, ex.getMessage());
+                    }
+                }
+            }
+
+            // only the newest segment is kept active, any other one was left behind before being sealed
+            for (var entry : segments.entrySet()) {
+                Segment segment;
+                try {
+                    segment = Segment.open(entry.getValue());
+                } catch (IOException ex) {
+                    log.warn("Ignoring invalid segment {}: {}", entry.getValue(), ex.getMessage());
+                    continue;
+                }
+                if (sealed.containsKey(entry.getKey())) {
+                    Files.delete(segment.path);
+                } else if (entry.getKey().equals(segments.lastKey())) {
+                    active = segment;
+                } else {
+                    seal(segment);
+                }
+            }
+        }
+
+        private long getLastTms() {
+            if (active != null && active.count > 0) {
+                return active.getTimestamp(active.count - 1);
+            }
+            return sealed.isEmpty() ? Long.MIN_VALUE : sealed.lastEntry().getValue().lastTms;
+        }
+
+        private boolean getLast(long sampleTms, double[] row) {
+            // only the active segment can be updated, anything sealed is final
+            if (active == null || active.count == 0 || active.columns != row.length || active.getTimestamp(active.count - 1) != sampleTms) {
+                return false;
+            }
+            active.read(active.count - 1, row);
+            return true;
+        }
+
+        private void put(long sampleTms, double[] row) throws IOException {
+            long lastTms = getLastTms();
+            // a sample could be persisted twice for the same timestamp, replacing the existing one
+            if (active != null && active.count > 0 && sampleTms == lastTms && active.columns == row.length) {
+                active.write(active.count - 1, sampleTms, row);
+                return;
+            }
+            if (sampleTms <= lastTms) {
+                log.debug("Discarding sample older than the last one in {}", dir);
+                return;
+            }
+            if (active != null && (active.count == active.capacity || active.columns != row.length)) {
+                seal(active);
+                active = null;
+            }
+            if (active == null) {
+                active = Segment.create(dir.resolve(sampleTms + SEGMENT_SUFFIX), capacity, row.length);
+            }
+            active.write(active.count, sampleTms, row);
+            active.commit(active.count + 1);
+        }
+
+        private void seal(Segment segment) throws IOException {
+            if (segment.count == 0) {
+                Files.delete(segment.path);
+                return;
+            }
+            // compressed copy is written aside and moved in place, so a crash leaves either the segment or its sealed copy
+            long firstTms = segment.getTimestamp(0);
+            Path path = dir.resolve(firstTms + SEALED_SUFFIX);
+            Path tmpPath = dir.resolve(firstTms + SEALED_SUFFIX + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmpPath, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(SEALED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC_OFFSET, SEALED_MAGIC);
+                header.putInt(COLUMNS_OFFSET, segment.columns);
+                header.putInt(COUNT_OFFSET, segment.count);
+                header.putLong(LAST_TMS_OFFSET, segment.getTimestamp(segment.count - 1));
+                channel.write(header);
+
+                double[] row = new double[segment.columns];
+                for (int start = 0; start < segment.count; start += GorillaCodec.BLOCK_SIZE) {
+                    int end = Math.min(start + GorillaCodec.BLOCK_SIZE, segment.count);
+                    var encoder = new GorillaCodec.Encoder(segment.columns);
+                    for (int n = start; n < end; n++) {
+                        segment.read(n, row);
+                        encoder.append(segment.getTimestamp(n), row);
+                    }
+                    byte[] block = encoder.toByteArray();
+                    ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    blockHeader.putLong(segment.getTimestamp(end - 1)).putInt(block.length).flip();
+                    channel.write(blockHeader);
+                    channel.write(ByteBuffer.wrap(block));
+                }
+                channel.force(true);
+            }
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(segment.path);
+            sealed.put(firstTms, SealedSegment.open(path));
+        }
+
+        private void expire(long deleteBefore) throws IOException {
+            // segments are chronological, stopping at the first one still containing samples in the retention window
+            var it = sealed.values().iterator();
+            while (it.hasNext()) {
+                SealedSegment segment = it.next();
+                if (segment.lastTms >= deleteBefore) {
+                    return;
+                }
+                // mapping stays valid until garbage collected, but nobody can reach it anymore
+                Files.deleteIfExists(segment.path);
+                it.remove();
+            }
+            if (active != null && (active.count == 0 || active.getTimestamp(active.count - 1) < deleteBefore)) {
+                Files.deleteIfExists(active.path);
+                active = null;
+            }
+        }
+
+    }
+
+    private static class SealedSegment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int columns;
+        private final long lastTms;
+
+        private SealedSegment(Path path, MappedByteBuffer buffer, int columns, long lastTms) {
+            this.path = path;
+            this.buffer = buffer;
+            this.columns = columns;
+            this.lastTms = lastTms;
+        }
+
+        private static SealedSegment open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, READ)) {
+                if (channel.size() < SEALED_HEADER_SIZE) {
+                    throw new IOException("Sealed segment is truncated");
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int columns = buffer.getInt(COLUMNS_OFFSET);
+                if (buffer.getInt(MAGIC_OFFSET) != SEALED_MAGIC || columns <= 0) {
+                    throw new IOException("Sealed segment header is corrupted");
+                }
+                return new SealedSegment(path, buffer, columns, buffer.getLong(LAST_TMS_OFFSET));
+            }
+        }
+
+    }
+
+    private static class Segment {
+
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int columns;
+        // committed rows, anything beyond is ignored even if partially written
+        private int count;
+
+        private Segment(Path path, MappedByteBuffer buffer, int capacity, int columns, int count) {
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.columns = columns;
+            this.count = count;
+        }
+
+        private static Segment create(Path path, int capacity, int columns) throws IOException {
+            // file is extended to its full size when mapped, unwritten regions don't take disk space on most filesystems
+            try (FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, getSize(capacity, columns));
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC_OFFSET, SEGMENT_MAGIC);
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putInt(COLUMNS_OFFSET, columns);
+                buffer.putInt(COUNT_OFFSET, 0);
+                return new Segment(path, buffer, capacity, columns, 0);
+            }
+        }
+
+        private static Segment open(Path path) throws IOException {
+            // mapping outlives the channel, so no file descriptor is kept open for each segment
+            try (FileChannel channel = FileChannel.open(path, READ, WRITE)) {
+                if (channel.size() < HEADER_SIZE) {
+                    throw new IOException("Segment is truncated");
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int capacity = buffer.getInt(CAPACITY_OFFSET);
+                int columns = buffer.getInt(COLUMNS_OFFSET);
+                int count = buffer.getInt(COUNT_OFFSET);
+                if (buffer.getInt(MAGIC_OFFSET) != SEGMENT_MAGIC || capacity <= 0 || columns <= 0 || count < 0 || count > capacity || channel.size() != getSize(capacity, columns)) {
+                    throw new IOException("Segment header is corrupted");
+                }
+                return new Segment(path, buffer, capacity, columns, count);
+            }
+        }
+
+        private static long getSize(int capacity, int columns) {
+            return HEADER_SIZE + (long) Long.BYTES * capacity * (columns + 1);
+        }
+
+        private long getTimestamp(int row) {
+            return buffer.getLong(HEADER_SIZE + Long.BYTES * row);
+        }
+
+        private void read(int row, double[] values) {
+            for (int i = 0; i < columns; i++) {
+                values[i] = buffer.getDouble(HEADER_SIZE + Long.BYTES * (capacity * (i + 1) + row));
+            }
+        }
+
+        private int search(long after) {
+            // first row strictly newer than given timestamp
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getTimestamp(mid) <= after) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void write(int row, long sampleTms, double[] values) {
+            for (int i = 0; i < values.length; i++) {
+                buffer.putDouble(HEADER_SIZE + Long.BYTES * (capacity * (i + 1) + row), values[i]);
+            }
+            buffer.putLong(HEADER_SIZE + Long.BYTES * row, sampleTms);
+        }
+
+        private void commit(int count) {
+            // row count is written last, so a row becomes visible after restart only once completely written
+            buffer.putInt(COUNT_OFFSET, count);
+            this.count = count;
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package jcollectd.engine.store;
+
+import jcollectd.common.dto.config.Probe;
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.engine.SampleTable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface SampleStore extends AutoCloseable {
+
+    // writes a batch of samples, expiring everything older than the retention of each series
+    void persistSamples(List<ComputedSample> samples, Instant collectTms, Instant deleteBefore) throws Exception;
+
+    // streams samples of each probe newer than given instant and not newer than the upper bound, if any,
+    // raw or from the rollup with given resolution, in chronological order
+    void readSamples(List<Probe> probes, Instant from, Instant to, Duration resolution, SampleHandler handler) throws Exception;
+
+    // bytes taken on disk by all files of the store
+    long getSize() throws IOException;
+
+    default List<List<Object[]>> getSamples(List<Probe> probes, Instant from, Instant to, Duration resolution) throws Exception {
+        List<List<Object[]>> ret = new ArrayList<>(probes.size());
+        probes.forEach(_ -> ret.add(new ArrayList<>()));
+        readSamples(probes, from, to, resolution, (idx, sampleTms, values) -> ret.get(idx).add(SampleTable.of(probes.get(idx).getType()).toRow(sampleTms, values)));
+        return ret;
+    }
+
+    @FunctionalInterface
+    interface SampleHandler {
+
+        void accept(int probeIdx, long sampleTms, double[] values) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,950 @@
+package jcollectd.engine.store;
+
+import jcollectd.common.dto.config.AppConfig;
+import jcollectd.common.dto.config.Probe;
+import jcollectd.common.dto.config.Rollup;
+import jcollectd.common.dto.sample.ComputedSample;
+import jcollectd.engine.SampleTable;
+import lombok.extern.log4j.Log4j2;
+import org.sqlite.SQLiteConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Log4j2
+public class SqliteSampleStore implements SampleStore {
+
+    private static final String CONNECTION_URL = "jdbc:sqlite:samples.db";
+    private static final List<Path> DATABASE_FILES = List.of(Path.of("samples.db"), Path.of("samples.db-wal"), Path.of("samples.db-shm"));
+    private static final String BEGIN_TRANSACTION = "BEGIN IMMEDIATE TRANSACTION";
+    private static final String BEGIN_READ_TRANSACTION = "BEGIN DEFERRED TRANSACTION";
+    private static final String COMMIT = "COMMIT";
+    private static final String ROLLBACK = "ROLLBACK";
+    private static final int READER_POOL_SIZE = 4;
+    private static final int BUSY_TIMEOUT = 5000;
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+    private static final int JOURNAL_SIZE_LIMIT = 4 * 1024 * 1024;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final int SCHEMA_VERSION = 5;
+    private static final long SECONDS_PER_DAY = 86400L;
+    // rows of per core tables gathered in memory at once, each as wide as the number of cores
+    private static final int CORE_CHUNK_ROWS = 256;
+    private static final DateTimeFormatter PARTITION_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final Pattern PARTITION_PATTERN = Pattern.compile("^tb_sample_(\\d{8})$");
+    private static final Pattern ROLLUP_PATTERN = Pattern.compile("^tb_rollup_(\\d+)$");
+    // layout before schema version 5, with one set of tables for each sample type
+    private static final Pattern LEGACY_PARTITION_PATTERN = Pattern.compile("^(tb_[a-z]+_sample)_(\\d{8})$");
+    private static final Pattern LEGACY_ROLLUP_PATTERN = Pattern.compile("^(tb_[a-z]+)_rollup_(\\d+)$");
+    private static final Pattern LEGACY_BLOCK_PATTERN = Pattern.compile("^(tb_[a-z]+)_block$");
+
+    private final AppConfig config;
+    // single writer connection, used by collect engine only, in WAL mode it never blocks readers
+    private final PooledConnection writer;
+    // small pool of read-only connections, borrowed by web engine for each request
+    private final BlockingQueue<PooledConnection> readers = new ArrayBlockingQueue<>(READER_POOL_SIZE);
+    // samples are partitioned by day (UTC), each partition is a table identified by epoch day
+    private final NavigableSet<Long> partitions = new ConcurrentSkipListSet<>();
+    // partitions are dropped or sealed once a day, readers are kept out only while that happens
+    private final ReadWriteLock partitionLock = new ReentrantReadWriteLock();
+    // every metric of every device is a series, identified by a small integer used as leading key of all tables
+    private final Map<SeriesKey, Integer> seriesIds = new ConcurrentHashMap<>();
+    // epoch day before which each rollup has been expired, by position among configured rollups, only touched by writer
+    private final long[] rollupExpiredDays;
+
+    static {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException ex) {
+            throw new UnsupportedOperationException("Error while loading Sqlite JDBC driver", ex);
+        }
+    }
+
+    public SqliteSampleStore(AppConfig config) throws SQLException {
+        this.config = config;
+        rollupExpiredDays = new long[config.getRollups().size()];
+        Arrays.fill(rollupExpiredDays, Long.MIN_VALUE);
+        writer = new PooledConnection(getConnection(false));
+        initializeDatabase();
+        initializeRollups();
+        // readers are opened only once the database exists and is in WAL mode
+        for (int i = 0; i < READER_POOL_SIZE; i++) {
+            readers.add(new PooledConnection(getConnection(true)));
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        PooledConnection reader;
+        while ((reader = readers.poll()) != null) {
+            reader.close();
+        }
+        synchronized (writer) {
+            // moving all content back to the main database file, so WAL file doesn't linger around
+            try (Statement stmt = writer.conn.createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            writer.close();
+        }
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        long ret = 0;
+        for (Path file : DATABASE_FILES) {
+            if (Files.exists(file)) {
+                ret += Files.size(file);
+            }
+        }
+        return ret;
+    }
+
+    private Connection getConnection(boolean readOnly) throws SQLException {
+        SQLiteConfig sqliteConfig = new SQLiteConfig();
+        sqliteConfig.setBusyTimeout(BUSY_TIMEOUT);
+        if (readOnly) {
+            // read-only connections can neither change journal mode nor execute DDL, they just follow the writer
+            sqliteConfig.setReadOnly(true);
+        } else {
+            // with WAL, synchronous NORMAL is still safe from corruption, only last transactions could be lost on power failure
+            sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            sqliteConfig.setJournalSizeLimit(JOURNAL_SIZE_LIMIT);
+        }
+        Connection conn = DriverManager.getConnection(CONNECTION_URL, sqliteConfig.toProperties());
+        if (!readOnly) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+            }
+        }
+        return conn;
+    }
+
+    private void initializeDatabase() throws SQLException {
+        boolean migrated = false;
+        Set<Long> createdPartitions = new TreeSet<>();
+        try (Statement stmt = writer.conn.createStatement()) {
+            stmt.executeUpdate(BEGIN_TRANSACTION);
+
+            int version;
+            try (var rs = stmt.executeQuery("PRAGMA user_version")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (version > SCHEMA_VERSION) {
+                stmt.executeUpdate(ROLLBACK);
+                throw new SQLException(String.format("Database schema version %s is newer than supported version %s", version, SCHEMA_VERSION));
+            }
+
+            // legacy databases have no version, but contain tables with textual timestamps and values, that must be converted
+            if (version < 2) {
+                for (SampleTable table : getExistingTables(stmt)) {
+                    log.info("Migrating table {} to numeric values", table.getTableName());
+                    stmt.executeUpdate("ALTER TABLE " + table.getTableName() + " RENAME TO " + table.getTableName() + "_legacy");
+                    stmt.executeUpdate(getCreateLegacyTableStatement(table, table.getTableName()));
+                    String select = "SELECT unixepoch(sample_tms)" + (table.isWithDevice() ? ", device" : "")
+                                    + table.getColumns().stream().map(c -> ", CAST(" + c + " AS " + table.getColumnType() + ")").collect(Collectors.joining());
+                    stmt.executeUpdate("INSERT OR IGNORE INTO " + table.getTableName() + " " + select + " FROM " + table.getTableName() + "_legacy WHERE unixepoch(sample_tms) IS NOT NULL");
+                    stmt.executeUpdate("DROP TABLE " + table.getTableName() + "_legacy");
+                    migrated = true;
+                }
+            }
+
+            // unpartitioned tables are split into daily partitions
+            if (version < 3) {
+                for (SampleTable table : getExistingTables(stmt)) {
+                    log.info("Migrating table {} to daily partitions", table.getTableName());
+                    List<Long> days = new ArrayList<>();
+                    try (var rs = stmt.executeQuery("SELECT DISTINCT sample_tms / " + SECONDS_PER_DAY + " FROM " + table.getTableName())) {
+                        while (rs.next()) {
+                            days.add(rs.getLong(1));
+                        }
+                    }
+                    String columns = "sample_tms" + (table.isWithDevice() ? ", device" : "") + table.getColumns().stream().map(c -> ", " + c).collect(Collectors.joining());
+                    for (long day : days) {
+                        if (createdPartitions.add(day)) {
+                            for (SampleTable t : SampleTable.values()) {
+                                stmt.executeUpdate(getCreateLegacyTableStatement(t, getLegacyPartitionName(t, day)));
+                            }
+                        }
+                        stmt.executeUpdate("INSERT OR IGNORE INTO " + getLegacyPartitionName(table, day) + " (" + columns + ") SELECT " + columns + " FROM " + table.getTableName()
+                                           + " WHERE sample_tms >= " + day * SECONDS_PER_DAY + " AND sample_tms < " + (day + 1) * SECONDS_PER_DAY);
+                    }
+                    stmt.executeUpdate("DROP TABLE " + table.getTableName());
+                    migrated = true;
+                }
+            }
+
+            // tables of each sample type are merged into generic tables, keyed by series
+            if (version < 5) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS tb_series (series_id INTEGER PRIMARY KEY, type TEXT NOT NULL, device TEXT NOT NULL, metric TEXT NOT NULL, UNIQUE (type, device, metric))");
+                stmt.executeUpdate(getCreateBlockStatement());
+                stmt.executeUpdate("CREATE INDEX IF NOT EXISTS ix_block_last_tms ON tb_block (last_tms)");
+                migrated |= migrateLegacyTables(stmt, createdPartitions);
+
+                // partitions of past days are sealed into compressed blocks
+                long today = Math.floorDiv(Instant.now().getEpochSecond(), SECONDS_PER_DAY);
+                for (long day : getTableSuffixes(stmt, PARTITION_PATTERN).stream().map(s -> LocalDate.parse(s, PARTITION_FORMATTER).toEpochDay()).filter(d -> d < today).toList()) {
+                    log.info("Sealing partition {} into compressed blocks", PARTITION_FORMATTER.format(LocalDate.ofEpochDay(day)));
+                    sealPartition(stmt, day);
+                    migrated = true;
+                }
+            }
+
+            stmt.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+            stmt.executeUpdate(COMMIT);
+
+            // converted tables leave a lot of free pages behind, give the space back to the filesystem once
+            if (migrated) {
+                log.info("Compacting database after migration");
+                stmt.executeUpdate("VACUUM");
+            }
+
+            // discovering existing partitions and series
+            getTableSuffixes(stmt, PARTITION_PATTERN).forEach(s -> partitions.add(LocalDate.parse(s, PARTITION_FORMATTER).toEpochDay()));
+            try (var rs = stmt.executeQuery("SELECT series_id, type, device, metric FROM tb_series")) {
+                while (rs.next()) {
+                    seriesIds.put(new SeriesKey(SampleTable.valueOf(rs.getString(2)), rs.getString(3), rs.getString(4)), rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    private boolean migrateLegacyTables(Statement stmt, Set<Long> createdPartitions) throws SQLException {
+        boolean migrated = false;
+        Map<SeriesKey, Integer> createdSeries = new HashMap<>();
+
+        for (String name : getTableNames(stmt, LEGACY_PARTITION_PATTERN)) {
+            Matcher m = LEGACY_PARTITION_PATTERN.matcher(name);
+            m.matches();
+            SampleTable table = getLegacyTable(m.group(1));
+            long day = LocalDate.parse(m.group(2), PARTITION_FORMATTER).toEpochDay();
+            log.info("Migrating table {} to series layout", name);
+            if (createdPartitions.add(day)) {
+                stmt.executeUpdate(getCreatePartitionStatement(day));
+            }
+            for (String column : table.getColumns()) {
+                registerLegacySeries(stmt, table, name, column);
+                stmt.executeUpdate("INSERT OR REPLACE INTO " + getPartitionName(day) + " (series_id, sample_tms, value)"
+                                   + " SELECT s.series_id, p.sample_tms, p." + column + " FROM " + name + " p" + getLegacySeriesJoin(table, "p", column));
+            }
+            stmt.executeUpdate("DROP TABLE " + name);
+            migrated = true;
+        }
+
+        for (String name : getTableNames(stmt, LEGACY_ROLLUP_PATTERN)) {
+            Matcher m = LEGACY_ROLLUP_PATTERN.matcher(name);
+            m.matches();
+            SampleTable table = getLegacyTable(m.group(1) + "_sample");
+            String rollupName = getRollupName(Duration.ofSeconds(Long.parseLong(m.group(2))));
+            log.info("Migrating table {} to series layout", name);
+            stmt.executeUpdate(getCreateRollupStatement(rollupName));
+            for (String column : table.getColumns()) {
+                registerLegacySeries(stmt, table, name, column);
+                stmt.executeUpdate("INSERT OR REPLACE INTO " + rollupName + " (series_id, bucket_tms, cnt, value_min, value_sum, value_max)"
+                                   + " SELECT s.series_id, r.bucket_tms, r.cnt, r." + column + "_min, r." + column + "_sum, r." + column + "_max"
+                                   + " FROM " + name + " r" + getLegacySeriesJoin(table, "r", column));
+            }
+            stmt.executeUpdate("DROP TABLE " + name);
+            migrated = true;
+        }
+
+        // blocks of legacy tables hold all columns together, they're decoded and split into one block for each series
+        var insert = writer.prepare(getInsertBlockStatement());
+        for (String name : getTableNames(stmt, LEGACY_BLOCK_PATTERN)) {
+            Matcher m = LEGACY_BLOCK_PATTERN.matcher(name);
+            m.matches();
+            SampleTable table = getLegacyTable(m.group(1) + "_sample");
+            log.info("Migrating table {} to series layout", name);
+            List<String> columns = table.getColumns();
+            try (var bstmt = writer.conn.createStatement();
+                 var rs = bstmt.executeQuery("SELECT block_tms, last_tms, data" + (table.isWithDevice() ? ", device" : "") + " FROM " + name)) {
+                while (rs.next()) {
+                    String device = table.isWithDevice() ? rs.getString(4) : "";
+                    GorillaCodec.Encoder[] encoders = new GorillaCodec.Encoder[columns.size()];
+                    for (int i = 0; i < encoders.length; i++) {
+                        encoders[i] = new GorillaCodec.Encoder(1);
+                    }
+                    var decoder = new GorillaCodec.Decoder(ByteBuffer.wrap(rs.getBytes(3)), 0);
+                    double[] value = new double[1];
+                    while (decoder.next()) {
+                        for (int i = 0; i < encoders.length; i++) {
+                            value[0] = decoder.getValues()[i];
+                            encoders[i].append(decoder.getTimestamp(), value);
+                        }
+                    }
+                    for (int i = 0; i < encoders.length; i++) {
+                        addBlockBatch(insert, getSeriesId(table, device, columns.get(i), createdSeries), rs.getLong(1), rs.getLong(2), encoders[i]);
+                    }
+                }
+            }
+            insert.executeBatch();
+            stmt.executeUpdate("DROP TABLE " + name);
+            migrated = true;
+        }
+        return migrated;
+    }
+
+    private void registerLegacySeries(Statement stmt, SampleTable table, String tableName, String column) throws SQLException {
+        stmt.executeUpdate("INSERT OR IGNORE INTO tb_series (type, device, metric) SELECT DISTINCT '" + table.name() + "', " + (table.isWithDevice() ? "device" : "''")
+                           + ", '" + column + "' FROM " + tableName);
+    }
+
+    private String getLegacySeriesJoin(SampleTable table, String alias, String column) {
+        return " JOIN tb_series s ON s.type = '" + table.name() + "' AND s.device = " + (table.isWithDevice() ? alias + ".device" : "''") + " AND s.metric = '" + column + "'";
+    }
+
+    private SampleTable getLegacyTable(String tableName) throws SQLException {
+        return Arrays.stream(SampleTable.values()).filter(t -> t.getTableName().equals(tableName)).findFirst()
+                .orElseThrow(() -> new SQLException(String.format("Unknown legacy table %s", tableName)));
+    }
+
+    private void initializeRollups() throws SQLException {
+        try (Statement stmt = writer.conn.createStatement()) {
+            stmt.executeUpdate(BEGIN_TRANSACTION);
+            Set<String> existing = new HashSet<>(getTableNames(stmt, ROLLUP_PATTERN));
+            for (Rollup rollup : config.getRollups()) {
+                String rollupName = getRollupName(rollup.getResolution());
+                if (existing.contains(rollupName)) {
+                    continue;
+                }
+
+                // new rollups are backfilled from samples already collected
+                log.info("Creating rollup table {}", rollupName);
+                stmt.executeUpdate(getCreateRollupStatement(rollupName));
+                long resolution = rollup.getResolution().getSeconds();
+                for (long day : partitions) {
+                    stmt.executeUpdate("INSERT INTO " + rollupName + " " + ROLLUP_COLUMNS
+                                       + " SELECT series_id, sample_tms / " + resolution + " * " + resolution + ", count(*), min(value), sum(value), max(value)"
+                                       + " FROM " + getPartitionName(day) + " WHERE true GROUP BY 1, 2"
+                                       + ROLLUP_CONFLICT_CLAUSE);
+                }
+                // sealed days can't be aggregated by sqlite, blocks are decoded and merged one sample at a time
+                var rstmt = writer.prepare(getUpsertRollupStatement(rollupName));
+                try (var rs = stmt.executeQuery("SELECT series_id, data FROM tb_block")) {
+                    while (rs.next()) {
+                        var decoder = new GorillaCodec.Decoder(ByteBuffer.wrap(rs.getBytes(2)), 0);
+                        while (decoder.next()) {
+                            addRollupBatch(rstmt, rs.getInt(1), Math.floorDiv(decoder.getTimestamp(), resolution) * resolution, decoder.getValues()[0]);
+                        }
+                    }
+                }
+                rstmt.executeBatch();
+            }
+            stmt.executeUpdate(COMMIT);
+        }
+    }
+
+    private List<SampleTable> getExistingTables(Statement stmt) throws SQLException {
+        List<SampleTable> ret = new ArrayList<>();
+        for (SampleTable table : SampleTable.values()) {
+            try (var rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = '" + table.getTableName() + "'")) {
+                if (rs.next()) {
+                    ret.add(table);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private List<String> getTableNames(Statement stmt, Pattern pattern) throws SQLException {
+        List<String> ret = new ArrayList<>();
+        try (var rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table'")) {
+            while (rs.next()) {
+                if (pattern.matcher(rs.getString(1)).matches()) {
+                    ret.add(rs.getString(1));
+                }
+            }
+        }
+        return ret;
+    }
+
+    private List<String> getTableSuffixes(Statement stmt, Pattern pattern) throws SQLException {
+        List<String> ret = new ArrayList<>();
+        for (String name : getTableNames(stmt, pattern)) {
+            Matcher m = pattern.matcher(name);
+            m.matches();
+            ret.add(m.group(1));
+        }
+        return ret;
+    }
+
+    private String getCreateLegacyTableStatement(SampleTable table, String tableName) {
+        // timestamps are stored as epoch seconds, measurements as native numeric values
+        StringBuilder sb = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(tableName).append(" (sample_tms INTEGER NOT NULL");
+        if (table.isWithDevice()) {
+            sb.append(", device TEXT NOT NULL");
+        }
+        for (String column : table.getColumns()) {
+            sb.append(", ").append(column).append(" ").append(table.getColumnType()).append(" NOT NULL");
+        }
+        sb.append(table.isWithDevice() ? ", PRIMARY KEY (sample_tms, device)" : ", PRIMARY KEY (sample_tms)");
+        return sb.append(") WITHOUT ROWID").toString();
+    }
+
+    private String getLegacyPartitionName(SampleTable table, long day) {
+        return table.getTableName() + "_" + PARTITION_FORMATTER.format(LocalDate.ofEpochDay(day));
+    }
+
+    private String getCreatePartitionStatement(long day) {
+        // series come first in the key, so reading a series is a contiguous range scan, whatever the number of devices
+        // numeric affinity stores integral values as integers, taking less space than reals
+        return "CREATE TABLE IF NOT EXISTS " + getPartitionName(day)
+               + " (series_id INTEGER NOT NULL, sample_tms INTEGER NOT NULL, value NUMERIC NOT NULL, PRIMARY KEY (series_id, sample_tms)) WITHOUT ROWID";
+    }
+
+    private String getCreateRollupStatement(String rollupName) {
+        // each bucket keeps count, min, sum and max of the series, so average can be computed and buckets can be merged incrementally
+        return "CREATE TABLE IF NOT EXISTS " + rollupName
+               + " (series_id INTEGER NOT NULL, bucket_tms INTEGER NOT NULL, cnt INTEGER NOT NULL, value_min REAL NOT NULL, value_sum REAL NOT NULL, value_max REAL NOT NULL,"
+               + " PRIMARY KEY (series_id, bucket_tms)) WITHOUT ROWID";
+    }
+
+    private String getCreateBlockStatement() {
+        // each block holds a run of consecutive samples of the same series, blobs are large so the table keeps its rowid
+        return "CREATE TABLE IF NOT EXISTS tb_block (series_id INTEGER NOT NULL, block_tms INTEGER NOT NULL, last_tms INTEGER NOT NULL, cnt INTEGER NOT NULL, data BLOB NOT NULL,"
+               + " PRIMARY KEY (series_id, block_tms))";
+    }
+
+    private static final String ROLLUP_COLUMNS = "(series_id, bucket_tms, cnt, value_min, value_sum, value_max)";
+    private static final String ROLLUP_CONFLICT_CLAUSE = " ON CONFLICT (series_id, bucket_tms) DO UPDATE SET cnt = cnt + excluded.cnt, value_min = min(value_min, excluded.value_min),"
+                                                         + " value_sum = value_sum + excluded.value_sum, value_max = max(value_max, excluded.value_max)";
+
+    private String getRollupName(Duration resolution) {
+        return "tb_rollup_" + resolution.getSeconds();
+    }
+
+    private String getPartitionName(long day) {
+        return "tb_sample_" + PARTITION_FORMATTER.format(LocalDate.ofEpochDay(day));
+    }
+
+    private void dropPartition(Statement stmt, long day) throws SQLException {
+        writer.evict(getPartitionName(day));
+        stmt.executeUpdate("DROP TABLE IF EXISTS " + getPartitionName(day));
+    }
+
+    private void sealPartition(Statement stmt, long day) throws SQLException {
+        // rows are already sorted by series and time, blocks are filled walking the primary key
+        var select = writer.prepare("SELECT series_id, sample_tms, value FROM " + getPartitionName(day) + " ORDER BY series_id, sample_tms");
+        var insert = writer.prepare(getInsertBlockStatement());
+        double[] value = new double[1];
+        GorillaCodec.Encoder encoder = null;
+        int blockSeries = 0;
+        long blockTms = 0;
+        long lastTms = 0;
+        try (var rs = select.executeQuery()) {
+            while (rs.next()) {
+                int seriesId = rs.getInt(1);
+                // a new block is started for every series, and whenever the current one is full
+                if (encoder != null && (encoder.getCount() == GorillaCodec.BLOCK_SIZE || seriesId != blockSeries)) {
+                    addBlockBatch(insert, blockSeries, blockTms, lastTms, encoder);
+                    encoder = null;
+                }
+                if (encoder == null) {
+                    encoder = new GorillaCodec.Encoder(1);
+                    blockSeries = seriesId;
+                    blockTms = rs.getLong(2);
+                }
+                lastTms = rs.getLong(2);
+                value[0] = rs.getDouble(3);
+                encoder.append(lastTms, value);
+            }
+        }
+        if (encoder != null) {
+            addBlockBatch(insert, blockSeries, blockTms, lastTms, encoder);
+        }
+        insert.executeBatch();
+        dropPartition(stmt, day);
+    }
+
+    private String getInsertBlockStatement() {
+        return "INSERT OR REPLACE INTO tb_block (series_id, block_tms, last_tms, cnt, data) VALUES (?, ?, ?, ?, ?)";
+    }
+
+    private void addBlockBatch(PreparedStatement pstmt, int seriesId, long blockTms, long lastTms, GorillaCodec.Encoder encoder) throws SQLException {
+        pstmt.setInt(1, seriesId);
+        pstmt.setLong(2, blockTms);
+        pstmt.setLong(3, lastTms);
+        pstmt.setInt(4, encoder.getCount());
+        pstmt.setBytes(5, encoder.toByteArray());
+        pstmt.addBatch();
+    }
+
+    private int getSeriesId(SampleTable table, String device, String metric, Map<SeriesKey, Integer> createdSeries) throws SQLException {
+        SeriesKey key = new SeriesKey(table, device, metric);
+        Integer seriesId = seriesIds.get(key);
+        if (seriesId == null) {
+            seriesId = createdSeries.get(key);
+        }
+        if (seriesId == null) {
+            var insert = writer.prepare("INSERT OR IGNORE INTO tb_series (type, device, metric) VALUES (?, ?, ?)");
+            insert.setString(1, table.name());
+            insert.setString(2, device);
+            insert.setString(3, metric);
+            insert.executeUpdate();
+            var select = writer.prepare("SELECT series_id FROM tb_series WHERE type = ? AND device = ? AND metric = ?");
+            select.setString(1, table.name());
+            select.setString(2, device);
+            select.setString(3, metric);
+            try (var rs = select.executeQuery()) {
+                rs.next();
+                seriesId = rs.getInt(1);
+            }
+            createdSeries.put(key, seriesId);
+        }
+        return seriesId;
+    }
+
+    @Override
+    public void persistSamples(List<ComputedSample> samples, Instant collectTms, Instant deleteBefore) throws SQLException {
+        synchronized (writer) {
+            // partitions of past days are either expired or sealed, readers must not look for them while they're being dropped
+            long today = Math.floorDiv(collectTms.getEpochSecond(), SECONDS_PER_DAY);
+            boolean restructure = !partitions.headSet(today).isEmpty();
+            if (restructure) {
+                partitionLock.writeLock().lock();
+            }
+            Set<Long> createdPartitions = new TreeSet<>();
+            Set<Long> droppedPartitions = new TreeSet<>();
+            Map<SeriesKey, Integer> createdSeries = new HashMap<>();
+            long[] expiredDays = new long[rollupExpiredDays.length];
+            try (var stmt = writer.conn.createStatement()) {
+                stmt.executeUpdate(BEGIN_TRANSACTION);
+                try {
+                    // retention is enforced by dropping whole partitions, once they are entirely older than the retention window
+                    for (long day : partitions.headSet(Math.floorDiv(deleteBefore.getEpochSecond(), SECONDS_PER_DAY))) {
+                        dropPartition(stmt, day);
+                        droppedPartitions.add(day);
+                    }
+                    // rollups are indexed by series, so expired buckets are deleted series by series, a whole day at once when retention window crosses it
+                    for (int i = 0; i < expiredDays.length; i++) {
+                        Rollup rollup = config.getRollups().get(i);
+                        expiredDays[i] = Math.floorDiv(collectTms.minus(rollup.getRetention()).getEpochSecond(), SECONDS_PER_DAY);
+                        if (expiredDays[i] <= rollupExpiredDays[i]) {
+                            continue;
+                        }
+                        var pstmt = writer.prepare("DELETE FROM " + getRollupName(rollup.getResolution()) + " WHERE series_id = ? AND bucket_tms < ?");
+                        for (int seriesId : seriesIds.values()) {
+                            pstmt.setInt(1, seriesId);
+                            pstmt.setLong(2, expiredDays[i] * SECONDS_PER_DAY);
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                    // blocks are expired individually, once their last sample is older than the retention window
+                    var pstmt = writer.prepare("DELETE FROM tb_block WHERE last_tms < ?");
+                    pstmt.setLong(1, deleteBefore.getEpochSecond());
+                    pstmt.executeUpdate();
+
+                    doPersistSamples(stmt, samples, createdPartitions, createdSeries);
+
+                    // past days won't receive new samples anymore, so their partitions are compressed into blocks
+                    Set<Long> pastPartitions = new TreeSet<>(partitions);
+                    pastPartitions.addAll(createdPartitions);
+                    pastPartitions.removeAll(droppedPartitions);
+                    for (long day : pastPartitions) {
+                        if (day < today) {
+                            sealPartition(stmt, day);
+                            droppedPartitions.add(day);
+                        }
+                    }
+                } catch (SQLException ex) {
+                    stmt.executeUpdate(ROLLBACK);
+                    throw ex;
+                }
+                stmt.executeUpdate(COMMIT);
+                // partition set and series dictionary are shared with readers, so they're updated only when changes are visible
+                partitions.addAll(createdPartitions);
+                partitions.removeAll(droppedPartitions);
+                seriesIds.putAll(createdSeries);
+                for (int i = 0; i < expiredDays.length; i++) {
+                    rollupExpiredDays[i] = Math.max(rollupExpiredDays[i], expiredDays[i]);
+                }
+            } finally {
+                if (restructure) {
+                    partitionLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void doPersistSamples(Statement stmt, List<ComputedSample> samples, Set<Long> createdPartitions, Map<SeriesKey, Integer> createdSeries) throws SQLException {
+        Set<PreparedStatement> batches = new LinkedHashSet<>();
+        for (var sample : samples) {
+            SampleTable table = SampleTable.of(sample);
+            String device = Objects.requireNonNullElse(SampleTable.getDevice(sample), "");
+            long sampleTms = SampleTable.getSampleTms(sample).getEpochSecond();
+            long day = Math.floorDiv(sampleTms, SECONDS_PER_DAY);
+            if (!partitions.contains(day) && createdPartitions.add(day)) {
+                stmt.executeUpdate(getCreatePartitionStatement(day));
+            }
+
+            // replacing existing rows, since a sample could be persisted twice for the same timestamp
+            var pstmt = writer.prepare("INSERT OR REPLACE INTO " + getPartitionName(day) + " (series_id, sample_tms, value) VALUES (?, ?, ?)");
+            double[] values = SampleTable.getValues(sample);
+            for (int i = 0; i < values.length; i++) {
+                int seriesId = getSeriesId(table, device, table.getMetric(i), createdSeries);
+                pstmt.setInt(1, seriesId);
+                pstmt.setLong(2, sampleTms);
+                if (table.getColumnType().equals("INTEGER")) {
+                    pstmt.setLong(3, Math.round(values[i]));
+                } else {
+                    pstmt.setDouble(3, values[i]);
+                }
+                pstmt.addBatch();
+
+                // updating every rollup bucket the sample falls into
+                for (Rollup rollup : config.getRollups()) {
+                    long resolution = rollup.getResolution().getSeconds();
+                    var rstmt = writer.prepare(getUpsertRollupStatement(getRollupName(rollup.getResolution())));
+                    addRollupBatch(rstmt, seriesId, Math.floorDiv(sampleTms, resolution) * resolution, values[i]);
+                    batches.add(rstmt);
+                }
+            }
+            batches.add(pstmt);
+        }
+        for (var pstmt : batches) {
+            pstmt.executeBatch();
+        }
+    }
+
+    private String getUpsertRollupStatement(String rollupName) {
+        return "INSERT INTO " + rollupName + " " + ROLLUP_COLUMNS + " VALUES (?, ?, 1, ?, ?, ?)" + ROLLUP_CONFLICT_CLAUSE;
+    }
+
+    private void addRollupBatch(PreparedStatement pstmt, int seriesId, long bucketTms, double value) throws SQLException {
+        pstmt.setInt(1, seriesId);
+        pstmt.setLong(2, bucketTms);
+        pstmt.setDouble(3, value);
+        pstmt.setDouble(4, value);
+        pstmt.setDouble(5, value);
+        pstmt.addBatch();
+    }
+
+    @Override
+    public void readSamples(List<Probe> probes, Instant from, Instant to, Duration resolution, SampleHandler handler) throws SQLException, IOException, InterruptedException {
+        PooledConnection reader = readers.take();
+        partitionLock.readLock().lock();
+        try (Statement stmt = reader.conn.createStatement()) {
+            // all probes are read within the same transaction, so they share a consistent snapshot of the database
+            stmt.executeUpdate(BEGIN_READ_TRANSACTION);
+            try {
+                for (int i = 0; i < probes.size(); i++) {
+                    readSamples(reader, i, probes.get(i), from.getEpochSecond(), to == null ? Long.MAX_VALUE : to.getEpochSecond(), resolution, handler);
+                }
+            } finally {
+                stmt.executeUpdate(COMMIT);
+            }
+        } finally {
+            partitionLock.readLock().unlock();
+            readers.add(reader);
+        }
+    }
+
+    private void readSamples(PooledConnection reader, int idx, Probe probe, long from, long until, Duration resolution, SampleHandler handler) throws SQLException, IOException {
+        SampleTable table = SampleTable.of(probe.getType());
+        if (table.isPerCore()) {
+            readCoreSamples(reader, idx, table, from, until, resolution, handler);
+            return;
+        }
+        String device = table.isWithDevice() ? probe.getDevice() : "";
+        int[] ids = new int[table.getColumns().size()];
+        for (int i = 0; i < ids.length; i++) {
+            Integer seriesId = seriesIds.get(new SeriesKey(table, device, table.getColumns().get(i)));
+            if (seriesId == null) {
+                // nothing has ever been persisted for this probe
+                return;
+            }
+            ids[i] = seriesId;
+        }
+
+        if (resolution != null) {
+            // rollups are returned as average value of each bucket
+            readRows(reader.prepare(getJoinQuery(getRollupName(resolution), "bucket_tms", "value_sum / r%d.cnt", ids.length, ">=")), idx, ids, from, until, handler);
+            return;
+        }
+
+        // sealed days come first, then only partitions overlapping the requested window are read, in chronological order
+        readBlocks(reader, idx, ids, from, until, handler);
+        for (long day : partitions.subSet(Math.floorDiv(from, SECONDS_PER_DAY), true, Math.floorDiv(until, SECONDS_PER_DAY), true)) {
+            readRows(reader.prepare(getJoinQuery(getPartitionName(day), "sample_tms", "value", ids.length, ">")), idx, ids, from, until, handler);
+        }
+    }
+
+    private String getJoinQuery(String tableName, String tmsColumn, String valueExpression, int columns, String operator) {
+        // first series drives a range scan, every other metric of the same probe is looked up by primary key
+        StringBuilder sb = new StringBuilder("SELECT r0.").append(tmsColumn);
+        for (int i = 0; i < columns; i++) {
+            sb.append(", r").append(i).append(".").append(String.format(valueExpression, i));
+        }
+        sb.append(" FROM ").append(tableName).append(" r0");
+        for (int i = 1; i < columns; i++) {
+            sb.append(" JOIN ").append(tableName).append(" r").append(i).append(" ON r").append(i).append(".series_id = ? AND r")
+                    .append(i).append(".").append(tmsColumn).append(" = r0.").append(tmsColumn);
+        }
+        return sb.append(" WHERE r0.series_id = ? AND r0.").append(tmsColumn).append(" ").append(operator).append(" ? AND r0.").append(tmsColumn).append(" <= ? ORDER BY r0.").append(tmsColumn).append(" ASC").toString();
+    }
+
+    private void readRows(PreparedStatement pstmt, int idx, int[] ids, long from, long until, SampleHandler handler) throws SQLException, IOException {
+        int param = 1;
+        for (int i = 1; i < ids.length; i++) {
+            pstmt.setInt(param++, ids[i]);
+        }
+        pstmt.setInt(param++, ids[0]);
+        pstmt.setLong(param++, from);
+        pstmt.setLong(param, until);
+        // values array is reused for every row, handlers must copy what they need
+        double[] values = new double[ids.length];
+        try (var rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = rs.getDouble(i + 2);
+                }
+                handler.accept(idx, rs.getLong(1), values);
+            }
+        }
+    }
+
+    private void readBlocks(PooledConnection reader, int idx, int[] ids, long from, long until, SampleHandler handler) throws SQLException, IOException {
+        // blocks entirely outside the requested window are skipped
+        var pstmt = reader.prepare("SELECT block_tms, series_id, data FROM tb_block WHERE series_id IN (?" + ", ?".repeat(ids.length - 1) + ") AND last_tms > ? AND block_tms <= ? ORDER BY block_tms ASC");
+        for (int i = 0; i < ids.length; i++) {
+            pstmt.setInt(i + 1, ids[i]);
+        }
+        pstmt.setLong(ids.length + 1, from);
+        pstmt.setLong(ids.length + 2, until);
+        double[] values = new double[ids.length];
+        GorillaCodec.Decoder[] decoders = new GorillaCodec.Decoder[ids.length];
+        long blockTms = Long.MIN_VALUE;
+        try (var rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                if (rs.getLong(1) != blockTms) {
+                    decodeBlocks(idx, decoders, from, until, values, handler);
+                    Arrays.fill(decoders, null);
+                    blockTms = rs.getLong(1);
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == rs.getInt(2)) {
+                        decoders[i] = new GorillaCodec.Decoder(ByteBuffer.wrap(rs.getBytes(3)), 0);
+                    }
+                }
+            }
+        }
+        decodeBlocks(idx, decoders, from, until, values, handler);
+    }
+
+    private static void decodeBlocks(int idx, GorillaCodec.Decoder[] decoders, long after, long until, double[] values, SampleHandler handler) throws IOException {
+        // metrics of the same probe are persisted and sealed together, so their blocks start together and hold the same timestamps
+        if (Arrays.stream(decoders).anyMatch(Objects::isNull)) {
+            return;
+        }
+        while (decoders[0].next()) {
+            long sampleTms = decoders[0].getTimestamp();
+            if (sampleTms > until) {
+                return;
+            }
+            values[0] = decoders[0].getValues()[0];
+            boolean complete = true;
+            for (int i = 1; i < decoders.length; i++) {
+                while (decoders[i].getTimestamp() < sampleTms && decoders[i].next()) {
+                    // skipping samples without a match in the first series
+                }
+                complete &= decoders[i].getTimestamp() == sampleTms;
+                values[i] = decoders[i].getValues()[0];
+            }
+            if (complete && sampleTms > after) {
+                handler.accept(idx, sampleTms, values);
+            }
+        }
+    }
+
+    private void readCoreSamples(PooledConnection reader, int idx, SampleTable table, long from, long until, Duration resolution, SampleHandler handler) throws SQLException, IOException {
+        // position in the row of each series, by series id, cores never sampled are left out
+        int[] positions = new int[seriesIds.values().stream().mapToInt(Integer::intValue).max().orElse(0) + 1];
+        Arrays.fill(positions, -1);
+        int width = 0;
+        for (var entry : seriesIds.entrySet()) {
+            int position = entry.getKey().table() == table ? table.getMetricIndex(entry.getKey().metric()) : -1;
+            if (position >= 0) {
+                positions[entry.getValue()] = position;
+                width = Math.max(width, (position / table.getColumns().size() + 1) * table.getColumns().size());
+            }
+        }
+        if (width == 0) {
+            // nothing has ever been persisted for this probe
+            return;
+        }
+        double[] values = new double[width];
+
+        // rollups are read from the first bucket of the window included, partitions after the last sample already seen
+        if (resolution != null) {
+            readCoreRows(reader, getRollupName(resolution), "bucket_tms", "value_sum / r.cnt", idx, table, positions, from - 1, until, width, handler);
+            return;
+        }
+        readCoreBlocks(reader, idx, table, positions, from, until, values, handler);
+        for (long day : partitions.subSet(Math.floorDiv(from, SECONDS_PER_DAY), true, Math.floorDiv(until, SECONDS_PER_DAY), true)) {
+            readCoreRows(reader, getPartitionName(day), "sample_tms", "value", idx, table, positions, from, until, width, handler);
+        }
+    }
+
+    private void readCoreRows(PooledConnection reader, String tableName, String tmsColumn, String valueExpression, int idx, SampleTable table, int[] positions, long after, long until,
+                              int width, SampleHandler handler) throws SQLException, IOException {
+        // series of all cores are far too many to be joined like metrics of other probes, and tables have no index leading with time,
+        // so each series is read along its primary key and rows are gathered by time, a chunk at once so that memory stays bounded
+        // first core drives the chunks, its timestamps are read alone, up to a chunk at a time
+        int driver = 0;
+        while (driver < positions.length && positions[driver] != 0) {
+            driver++;
+        }
+        var chunkStmt = reader.prepare("SELECT " + tmsColumn + " FROM " + tableName + " WHERE series_id = ? AND " + tmsColumn + " > ? AND " + tmsColumn + " <= ?"
+                                       + " ORDER BY " + tmsColumn + " ASC LIMIT " + CORE_CHUNK_ROWS);
+        var rowStmt = reader.prepare("SELECT r." + tmsColumn + ", r.series_id, r." + valueExpression + " FROM " + tableName + " r"
+                                     + " WHERE r.series_id IN (SELECT series_id FROM tb_series WHERE type = ?) AND r." + tmsColumn + " > ? AND r." + tmsColumn + " <= ?");
+        NavigableMap<Long, double[]> rows = new TreeMap<>();
+        long start = after;
+        while (start < until) {
+            long end = until;
+            if (driver < positions.length) {
+                chunkStmt.setInt(1, driver);
+                chunkStmt.setLong(2, start);
+                chunkStmt.setLong(3, until);
+                int count = 0;
+                try (var rs = chunkStmt.executeQuery()) {
+                    while (rs.next()) {
+                        end = rs.getLong(1);
+                        count++;
+                    }
+                }
+                // whatever is left after the last sample of first core is read at once
+                end = count == CORE_CHUNK_ROWS ? end : until;
+            }
+
+            rowStmt.setString(1, table.name());
+            rowStmt.setLong(2, start);
+            rowStmt.setLong(3, end);
+            try (var rs = rowStmt.executeQuery()) {
+                while (rs.next()) {
+                    // series created after the dictionary was read are ignored, cores missing at some time are left to zero
+                    int seriesId = rs.getInt(2);
+                    if (seriesId < positions.length && positions[seriesId] >= 0) {
+                        rows.computeIfAbsent(rs.getLong(1), _ -> new double[width])[positions[seriesId]] = rs.getDouble(3);
+                    }
+                }
+            }
+            for (var row : rows.entrySet()) {
+                handler.accept(idx, row.getKey(), row.getValue());
+            }
+            rows.clear();
+            start = end;
+        }
+    }
+
+    private void readCoreBlocks(PooledConnection reader, int idx, SampleTable table, int[] positions, long from, long until, double[] values, SampleHandler handler) throws SQLException, IOException {
+        // each series is sealed on its own, so blocks of cores online only part of the day, or with gaps, start at different times:
+        // blocks are merged by timestamp, each one joining the merge when the samples already decoded reach its first one
+        var pstmt = reader.prepare("SELECT b.block_tms, b.series_id, b.data FROM tb_block b JOIN tb_series s ON s.series_id = b.series_id"
+                                   + " WHERE s.type = ? AND b.last_tms > ? AND b.block_tms <= ? ORDER BY b.block_tms ASC");
+        pstmt.setString(1, table.name());
+        pstmt.setLong(2, from);
+        pstmt.setLong(3, until);
+        PriorityQueue<CoreCursor> cursors = new PriorityQueue<>(Comparator.comparingLong(c -> c.decoder().getTimestamp()));
+        try (var rs = pstmt.executeQuery()) {
+            boolean pending = rs.next();
+            while (true) {
+                while (pending && (cursors.isEmpty() || rs.getLong(1) <= cursors.peek().decoder().getTimestamp())) {
+                    int seriesId = rs.getInt(2);
+                    if (seriesId < positions.length && positions[seriesId] >= 0) {
+                        var decoder = new GorillaCodec.Decoder(ByteBuffer.wrap(rs.getBytes(3)), 0);
+                        if (decoder.next()) {
+                            cursors.add(new CoreCursor(positions[seriesId], decoder));
+                        }
+                    }
+                    pending = rs.next();
+                }
+                if (cursors.isEmpty() || cursors.peek().decoder().getTimestamp() > until) {
+                    return;
+                }
+                // cores without a sample at this time are left to zero, like in partitions
+                long sampleTms = cursors.peek().decoder().getTimestamp();
+                Arrays.fill(values, 0);
+                while (!cursors.isEmpty() && cursors.peek().decoder().getTimestamp() == sampleTms) {
+                    CoreCursor cursor = cursors.poll();
+                    values[cursor.position()] = cursor.decoder().getValues()[0];
+                    if (cursor.decoder().next()) {
+                        cursors.add(cursor);
+                    }
+                }
+                if (sampleTms > from) {
+                    handler.accept(idx, sampleTms, values);
+                }
+            }
+        }
+    }
+
+    private record SeriesKey(SampleTable table, String device, String metric) {
+    }
+
+    private record CoreCursor(int position, GorillaCodec.Decoder decoder) {
+    }
+
+    private static class PooledConnection {
+
+        private final Connection conn;
+        // prepared statements are cached by their sql text, least recently used ones are closed when cache is full
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        private PooledConnection(Connection conn) {
+            this.conn = conn;
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement pstmt = statements.get(sql);
+            if (pstmt == null) {
+                if (statements.size() >= STATEMENT_CACHE_SIZE) {
+                    var eldest = statements.entrySet().iterator().next();
+                    eldest.getValue().close();
+                    statements.remove(eldest.getKey());
+                }
+                pstmt = conn.prepareStatement(sql);
+                statements.put(sql, pstmt);
+            }
+            return pstmt;
+        }
+
+        private void evict(String fragment) throws SQLException {
+            var it = statements.entrySet().iterator();
+            while (it.hasNext()) {
+                var entry = it.next();
+                if (entry.getKey().contains(fragment)) {
+                    entry.getValue().close();
+                    it.remove();
+                }
+            }
+        }
+
+        private void close() throws SQLException {
+            for (var pstmt : statements.values()) {
+                pstmt.close();
+            }
+            statements.clear();
+            conn.close();
+        }
+
+    }
+
+}
@@ -7,7 +7,14 @@ import jcollectd.common.exception.CollectException;
 import jcollectd.common.exception.ConfigurationException;
 import jcollectd.engine.CollectEngine;
 import jcollectd.engine.ConfigurationParser;
+import jcollectd.engine.MetricsRegistry;
+import jcollectd.engine.PersistEngine;
+import jcollectd.engine.SeriesCache;
+import jcollectd.engine.StaticResources;
 import jcollectd.engine.WebEngine;
+import jcollectd.engine.store.MappedSampleStore;
+import jcollectd.engine.store.SampleStore;
+import jcollectd.engine.store.SqliteSampleStore;
 import lombok.SneakyThrows;
 import lombok.extern.log4j.Log4j2;
 
@@ -26,20 +33,33 @@ public class Launcher {
             // parsing configuration
             AppConfig config = ConfigurationParser.parse(args);
 
-            // creating collect engine
-            CollectEngine engine = new CollectEngine(config);
+            // internal metrics, shared by all engines
+            MetricsRegistry registry = new MetricsRegistry();
 
-            // creating http server
-            HttpServer server = HttpServer.create(new InetSocketAddress(config.getPort()), 0, "/", new WebEngine(config, engine));
-            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            // opening sample store, shared by both engines for the whole application lifetime
+            try (SampleStore store = openStore(config);
+                 PersistEngine persistEngine = new PersistEngine(config, store, registry)) {
+                registry.gauge(MetricsRegistry.STORE_SIZE, store::getSize);
 
-            // adding shutdown hook for clean shutdown when killed
-            Thread sh = new ShutdownHook(Thread.currentThread());
-            Runtime.getRuntime().addShutdownHook(sh);
+                // loading recent samples in memory, serving web requests without touching the store
+                SeriesCache seriesCache = new SeriesCache(config, store);
 
-            // starting threads
-            server.start();
-            engine.run();
+                // creating collect engine
+                CollectEngine engine = new CollectEngine(config, persistEngine, seriesCache, registry);
+
+                // creating http server
+                HttpServer server = HttpServer.create(new InetSocketAddress(config.getPort()), 0, "/", new WebEngine(config, engine, persistEngine, seriesCache, store, StaticResources.load(), registry));
+                server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+                // adding shutdown hook for clean shutdown when killed
+                Thread sh = new ShutdownHook(Thread.currentThread());
+                Runtime.getRuntime().addShutdownHook(sh);
+
+                // starting threads
+                server.start();
+                persistEngine.start();
+                engine.run();
+            }
         } catch (ConfigurationException | CollectException ex) {
             // exception already handled and logged
             System.exit(1);
@@ -50,6 +70,13 @@ public class Launcher {
         }
     }
 
+    private static SampleStore openStore(AppConfig config) throws Exception {
+        return switch (config.getStore()) {
+            case SQLITE -> new SqliteSampleStore(config);
+            case MAPPED -> new MappedSampleStore(config);
+        };
+    }
+
     @SneakyThrows
     private static void printBanner() {
         try (var is = Launcher.class.getResourceAsStream("/banner.txt")) {
@@ -7,11 +7,19 @@ import lombok.extern.log4j.Log4j2;
 @Log4j2
 public class ShutdownHook extends Thread {
 
+    private static final long SHUTDOWN_TIMEOUT = 10_000;
+
     private final Thread engineThread;
 
     @Override
     public void run() {
         engineThread.interrupt();
+        // giving the engine thread a chance to flush pending samples, JVM halts as soon as shutdown hooks complete
+        try {
+            engineThread.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
@@ -1,5 +1,5 @@
 import * as echarts from "echarts";
-import { Probe } from "../../services/api.types";
+import { Probe, Series } from "../../services/api.types";
 
 export const ERROR_MESSAGE = "Error while fetching data, connection to backend failed";
 
@@ -8,8 +8,23 @@ const FONT_FAMILY = "Verdana, Geneva, sans-serif";
 const INACTIVE_TEXT_COLOR = "dimgray";
 const LINE_COLOR = "silver";
 const AREA_OPACITY = 0.5;
+const EMPTY = new Float64Array(0);
+// values of each core, one core after the other
+const CORE_METRICS = 4;
 
-export function createChartOption(probe: Probe, source: [][]): echarts.EChartsOption {
+// cells of the heatmap, one sample after the other, so new samples are appended and expired ones cut off the front
+export interface HeatmapSource {
+  sample: Float64Array;
+  core: Float64Array;
+  usage: Float64Array;
+  timestamp: Float64Array;
+  User: Float64Array;
+  System: Float64Array;
+  "I/O wait": Float64Array;
+  Steal: Float64Array;
+}
+
+export function createChartOption(probe: Probe, series: Series, heatmap: HeatmapSource | null): echarts.EChartsOption {
   const ret: echarts.EChartsOption = {};
 
   ret.title = {
@@ -40,6 +55,10 @@ export function createChartOption(probe: Probe, source: [][]): echarts.EChartsOp
     containLabel: true,
   };
 
+  if (probe.type === "CORES") {
+    return createHeatmapOption(probe, series, heatmap!, ret);
+  }
+
   ret.xAxis = [
     {
       type: "time",
@@ -75,17 +94,7 @@ export function createChartOption(probe: Probe, source: [][]): echarts.EChartsOp
     axisPointer: {
       label: {
         formatter: function (obj: any) {
-          const label = Intl.DateTimeFormat(undefined, {
-            year: "numeric",
-            month: "2-digit",
-            day: "2-digit",
-            hour: "numeric",
-            minute: "numeric",
-            second: "numeric",
-          })
-            .format(new Date(obj.value))
-            .replace(",", "");
-          return label;
+          return formatTimestamp(obj.value);
         },
       },
     },
@@ -95,7 +104,7 @@ export function createChartOption(probe: Probe, source: [][]): echarts.EChartsOp
   };
 
   ret.dataset = {
-    source: source,
+    source: getChartSource(probe, series),
     dimensions: getChartDimensions(probe),
   };
 
@@ -106,12 +115,105 @@ export function createChartOption(probe: Probe, source: [][]): echarts.EChartsOp
   return ret;
 }
 
+// one row for each core, one cell for each sample, colored by usage (user, system and steal, as aggregated CPU usage)
+function createHeatmapOption(probe: Probe, series: Series, heatmap: HeatmapSource, ret: echarts.EChartsOption): echarts.EChartsOption {
+  ret.legend = { show: false };
+
+  ret.xAxis = [
+    {
+      type: "category",
+      data: getHeatmapTimestamps(series),
+      axisLine: {
+        lineStyle: {
+          color: LINE_COLOR,
+        },
+      },
+      axisLabel: {
+        color: LINE_COLOR,
+        formatter: function (value: string) {
+          return Intl.DateTimeFormat(undefined, { hour: "numeric", minute: "numeric" }).format(new Date(Number(value)));
+        },
+      },
+    },
+  ];
+
+  ret.yAxis = [
+    {
+      type: "category",
+      data: getHeatmapCores(series),
+      axisLabel: {
+        margin: 16,
+        color: LINE_COLOR,
+      },
+    },
+  ];
+
+  ret.visualMap = {
+    min: 0,
+    max: 100,
+    dimension: 2,
+    orient: "horizontal",
+    right: "32",
+    top: "16",
+    itemHeight: 200,
+    calculable: true,
+    formatter: "{value}%",
+    textStyle: {
+      color: TEXT_COLOR,
+      fontFamily: FONT_FAMILY,
+    },
+    inRange: {
+      color: getChartColor(probe),
+    },
+  };
+
+  ret.tooltip = {
+    trigger: "item",
+    formatter: function (obj: any) {
+      const dimensions = getChartDimensions(probe);
+      const value: number[] = obj.value;
+      let label = formatTimestamp(value[3]) + "<br/>cpu" + value[1] + ": " + value[2].toFixed(1) + "%";
+      for (let i = 4; i < dimensions.length; i++) {
+        label += "<br/>" + dimensions[i] + ": " + value[i].toFixed(1) + "%";
+      }
+      return label;
+    },
+    textStyle: {
+      fontFamily: FONT_FAMILY,
+    },
+  };
+
+  ret.dataset = {
+    source: heatmap,
+    dimensions: getChartDimensions(probe),
+  };
+
+  ret.series = getChartSeries(probe);
+
+  return ret;
+}
+
+function formatTimestamp(value: number) {
+  return Intl.DateTimeFormat(undefined, {
+    year: "numeric",
+    month: "2-digit",
+    day: "2-digit",
+    hour: "numeric",
+    minute: "numeric",
+    second: "numeric",
+  })
+    .format(new Date(value))
+    .replace(",", "");
+}
+
 function getChartTitle(probe: Probe) {
   switch (probe.type) {
     case "LOAD":
       return "Average load";
     case "CPU":
       return "CPU usage";
+    case "CORES":
+      return "CPU usage per core";
     case "MEM":
       return "Memory usage (MiB)";
     case "NET":
@@ -122,6 +224,8 @@ function getChartTitle(probe: Probe) {
       return "ZFS dataset usage: " + probe.label + " (MiB/s)";
     case "GPU":
       return "GPU usage";
+    case "SELF":
+      return "JCollectd timings (ms)";
   }
 }
 
@@ -131,6 +235,8 @@ function getChartDimensions(probe: Probe) {
       return ["timestamp", "1 minute", "5 minutes", "15 minutes"];
     case "CPU":
       return ["timestamp", "CPU"];
+    case "CORES":
+      return ["sample", "core", "usage", "timestamp", "User", "System", "I/O wait", "Steal"];
     case "MEM":
       return ["timestamp", "Used memory", "Cache", "Swap"];
     case "NET":
@@ -140,6 +246,8 @@ function getChartDimensions(probe: Probe) {
       return ["timestamp", "Read", "Write"];
     case "GPU":
       return ["timestamp", "GPU"];
+    case "SELF":
+      return ["timestamp", "Collect", "Persist"];
   }
 }
 
@@ -155,6 +263,10 @@ function getChartColor(probe: Probe) {
     case "DISK":
     case "ZFS":
       return ["#109618", "#3366cc"];
+    case "SELF":
+      return ["#3366cc", "#ff9900"];
+    case "CORES":
+      return ["#082235", "#3366cc", "#ff9900", "#dc3912"];
   }
 }
 
@@ -244,6 +356,18 @@ function getChartSeries(probe: Probe): echarts.SeriesOption[] {
           },
         },
       ];
+    case "CORES":
+      return [
+        {
+          type: "heatmap",
+          name: getChartTitle(probe),
+          progressive: 0,
+          encode: {
+            x: getChartDimensions(probe)[0],
+            y: getChartDimensions(probe)[1],
+          },
+        },
+      ];
     case "NET":
       return [
         {
@@ -269,6 +393,7 @@ function getChartSeries(probe: Probe): echarts.SeriesOption[] {
       ];
     case "DISK":
     case "ZFS":
+    case "SELF":
       return [
         {
           type: "line",
@@ -294,10 +419,123 @@ function getChartSeries(probe: Probe): echarts.SeriesOption[] {
   }
 }
 
-export function updateChartOption(source: [][]): echarts.EChartsOption {
+export function updateChartOption(probe: Probe, series: Series, heatmap: HeatmapSource | null): echarts.EChartsOption {
+  if (probe.type === "CORES") {
+    return {
+      xAxis: [{ data: getHeatmapTimestamps(series) }],
+      yAxis: [{ data: getHeatmapCores(series) }],
+      dataset: {
+        source: heatmap!,
+      },
+    };
+  }
   return {
     dataset: {
-      source: source,
+      source: getChartSource(probe, series),
     },
   };
 }
+
+export function mergeSeries(source: Series, delta: Series, retentionTms: string): Series {
+  // delta could start with samples already known (e.g. the last bucket of a rollup, updated since), they're replaced
+  const retention = Date.parse(retentionTms);
+  const deltaStart = delta.timestamps.length > 0 ? delta.timestamps[0] : Infinity;
+  let start = 0;
+  while (start < source.timestamps.length && source.timestamps[start] <= retention) {
+    start++;
+  }
+  let end = start;
+  while (end < source.timestamps.length && source.timestamps[end] < deltaStart) {
+    end++;
+  }
+  // empty datasets have no columns at all, so width is taken from whichever side has them
+  const width = Math.max(source.columns.length, delta.columns.length);
+  return {
+    timestamps: concat(source.timestamps.subarray(start, end), delta.timestamps),
+    columns: Array.from({ length: width }, (_, i) => concat(source.columns[i]?.subarray(start, end) ?? EMPTY, delta.columns[i] ?? EMPTY)),
+  };
+}
+
+function concat(a: Float64Array, b: Float64Array) {
+  const ret = new Float64Array(a.length + b.length);
+  ret.set(a);
+  ret.set(b, a.length);
+  return ret;
+}
+
+function getChartSource(probe: Probe, series: Series) {
+  // column oriented source, each dimension of the chart is a typed array
+  const ret: { [dimension: string]: Float64Array } = {};
+  getChartDimensions(probe).forEach((dimension, idx) => {
+    ret[dimension] = idx === 0 ? series.timestamps : (series.columns[idx - 1] ?? EMPTY);
+  });
+  return ret;
+}
+
+function getHeatmapTimestamps(series: Series) {
+  return Array.from(series.timestamps, (timestamp) => String(timestamp));
+}
+
+function getHeatmapCores(series: Series) {
+  return Array.from({ length: Math.floor(series.columns.length / CORE_METRICS) }, (_, core) => "cpu" + core);
+}
+
+export function getHeatmapSource(probe: Probe, series: Series): HeatmapSource | null {
+  return probe.type === "CORES" ? getHeatmapCells(series, 0) : null;
+}
+
+export function mergeHeatmapSource(source: HeatmapSource, delta: Series, retentionTms: string): HeatmapSource {
+  // same as mergeSeries, only cells of delta are built, cells of expired or replaced samples are cut off both ends
+  const retention = Date.parse(retentionTms);
+  const deltaStart = delta.timestamps.length > 0 ? delta.timestamps[0] : Infinity;
+  let start = 0;
+  while (start < source.timestamp.length && source.timestamp[start] <= retention) {
+    start++;
+  }
+  let end = source.timestamp.length;
+  while (end > start && source.timestamp[end - 1] >= deltaStart) {
+    end--;
+  }
+  // x axis is the index of each sample, so kept cells are numbered again from zero
+  const first = end > start ? source.sample[start] : 0;
+  const cells = getHeatmapCells(delta, end > start ? source.sample[end - 1] - first + 1 : 0);
+  const ret = {} as HeatmapSource;
+  (Object.keys(source) as (keyof HeatmapSource)[]).forEach((dimension) => {
+    ret[dimension] = concat(source[dimension].subarray(start, end), cells[dimension]);
+  });
+  for (let idx = 0; first > 0 && idx < end - start; idx++) {
+    ret.sample[idx] -= first;
+  }
+  return ret;
+}
+
+function getHeatmapCells(series: Series, first: number): HeatmapSource {
+  // one cell for each core of each sample, still column oriented, so thousands of cores by samples don't create an object each
+  const samples = series.timestamps.length;
+  const cores = Math.floor(series.columns.length / CORE_METRICS);
+  const ret: HeatmapSource = {
+    sample: new Float64Array(samples * cores),
+    core: new Float64Array(samples * cores),
+    usage: new Float64Array(samples * cores),
+    timestamp: new Float64Array(samples * cores),
+    User: new Float64Array(samples * cores),
+    System: new Float64Array(samples * cores),
+    "I/O wait": new Float64Array(samples * cores),
+    Steal: new Float64Array(samples * cores),
+  };
+  for (let core = 0; core < cores; core++) {
+    const [user, system, iowait, steal] = series.columns.slice(core * CORE_METRICS, (core + 1) * CORE_METRICS);
+    for (let n = 0; n < samples; n++) {
+      const idx = n * cores + core;
+      ret.sample[idx] = first + n;
+      ret.core[idx] = core;
+      ret.usage[idx] = user[n] + system[n] + steal[n];
+      ret.timestamp[idx] = series.timestamps[n];
+      ret.User[idx] = user[n];
+      ret.System[idx] = system[n];
+      ret["I/O wait"][idx] = iowait[n];
+      ret.Steal[idx] = steal[n];
+    }
+  }
+  return ret;
+}
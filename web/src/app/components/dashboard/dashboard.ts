@@ -2,10 +2,10 @@ import { CommonModule } from "@angular/common";
 import { ChangeDetectionStrategy, ChangeDetectorRef, Component, HostListener, OnDestroy, OnInit, signal } from "@angular/core";
 import { Title } from "@angular/platform-browser";
 import * as echarts from "echarts";
-import { interval, Subscription } from "rxjs";
+import { defer, retry, Subscription, timer } from "rxjs";
 import { Api } from "../../services/api";
-import { Probe } from "../../services/api.types";
-import { createChartOption, ERROR_MESSAGE, updateChartOption } from "./dashboard.helper";
+import { Probe, Series } from "../../services/api.types";
+import { createChartOption, ERROR_MESSAGE, getHeatmapSource, HeatmapSource, mergeHeatmapSource, mergeSeries, updateChartOption } from "./dashboard.helper";
 
 @Component({
   selector: "app-dashboard",
@@ -21,11 +21,15 @@ export class Dashboard implements OnInit, OnDestroy {
   readonly collectElapsed = signal<string | null>(null);
   readonly persistElapsed = signal<string | null>(null);
   readonly reportElapsed = signal<string | null>(null);
+  readonly persistQueueDepth = signal<number>(0);
   readonly errorMessage = signal<string | null>(null);
 
-  private datasets: [][][] = [];
+  private datasets: Series[] = [];
+  // cells of each heatmap, kept along datasets so that each event only builds the cells of its samples
+  private heatmaps: (HeatmapSource | null)[] = [];
+  private lastTms: string | null = null;
   private charts: echarts.ECharts[] = [];
-  private timer$: Subscription | null = null;
+  private events$: Subscription | null = null;
 
   constructor(
     private title: Title,
@@ -38,7 +42,7 @@ export class Dashboard implements OnInit, OnDestroy {
   }
 
   private loadInitialData() {
-    this.api.getRuntime().subscribe({
+    this.api.getRuntime(this.getMaxPoints()).subscribe({
       next: (response) => {
         this.title.setTitle(response.hostname);
         this.hostname.set(response.hostname);
@@ -47,11 +51,13 @@ export class Dashboard implements OnInit, OnDestroy {
         this.collectElapsed.set(response.collectElapsed);
         this.persistElapsed.set(response.persistElapsed);
         this.reportElapsed.set(response.reportElapsed);
+        this.persistQueueDepth.set(response.persistQueueDepth);
         this.errorMessage.set(null);
         this.datasets = response.datasets;
+        this.lastTms = response.lastTms;
         this.cdr.detectChanges();
         this.initCharts();
-        this.startTimer(response.interval);
+        this.subscribeEvents(response.interval);
       },
       error: (_) => {
         this.errorMessage.set(ERROR_MESSAGE);
@@ -62,36 +68,53 @@ export class Dashboard implements OnInit, OnDestroy {
   private initCharts() {
     this.probes().forEach((probe, idx) => {
       const chart = echarts.init(document.getElementById("chart" + idx));
-      const option = createChartOption(probe, this.datasets[idx]);
+      const heatmap = getHeatmapSource(probe, this.datasets[idx]);
+      const option = createChartOption(probe, this.datasets[idx], heatmap);
       chart.setOption(option, true);
       this.charts.push(chart);
+      this.heatmaps.push(heatmap);
     });
   }
 
-  private startTimer(i: number) {
-    this.timer$ = interval(i * 1000).subscribe(() => this.updateData());
-  }
-
-  private updateData() {
-    this.api.getRuntime().subscribe({
+  private subscribeEvents(i: number) {
+    // only samples newer than the ones already drawn are pushed, then appended to local datasets
+    // on failure, stream is opened again after one interval, resuming from the last sample received
+    const events = defer(() => this.api.getEvents(this.getMaxPoints(), this.lastTms)).pipe(
+      retry({
+        delay: () => {
+          this.errorMessage.set(ERROR_MESSAGE);
+          return timer(i * 1000);
+        },
+      }),
+    );
+    this.events$ = events.subscribe({
       next: (response) => {
         this.collectTms.set(response.collectTms);
         this.collectElapsed.set(response.collectElapsed);
         this.persistElapsed.set(response.persistElapsed);
         this.reportElapsed.set(response.reportElapsed);
+        this.persistQueueDepth.set(response.persistQueueDepth);
         this.errorMessage.set(null);
-        this.datasets = response.datasets;
+        this.datasets = this.lastTms
+          ? this.datasets.map((source, idx) => mergeSeries(source, response.datasets[idx], response.retentionTms))
+          : response.datasets;
+        this.heatmaps = this.lastTms
+          ? this.heatmaps.map((source, idx) => source && mergeHeatmapSource(source, response.datasets[idx], response.retentionTms))
+          : this.datasets.map((series, idx) => getHeatmapSource(this.probes()[idx], series));
+        this.lastTms = response.lastTms ?? this.lastTms;
         this.updateCharts();
       },
-      error: (_) => {
-        this.errorMessage.set(ERROR_MESSAGE);
-      },
     });
   }
 
+  private getMaxPoints() {
+    // one sample per physical pixel is as much as a chart as wide as the window can draw
+    return Math.round(window.innerWidth * window.devicePixelRatio);
+  }
+
   private updateCharts() {
     this.charts.forEach((chart, idx) => {
-      const option = updateChartOption(this.datasets[idx]);
+      const option = updateChartOption(this.probes()[idx], this.datasets[idx], this.heatmaps[idx]);
       chart.setOption(option, false);
     });
   }
@@ -103,6 +126,6 @@ export class Dashboard implements OnInit, OnDestroy {
 
   ngOnDestroy(): void {
     this.charts.forEach((chart) => chart.dispose());
-    this.timer$?.unsubscribe();
+    this.events$?.unsubscribe();
   }
 }
@@ -1,7 +1,8 @@
-import { HttpClient } from "@angular/common/http";
+import { HttpClient, HttpParams } from "@angular/common/http";
 import { Injectable } from "@angular/core";
+import { map, Observable } from "rxjs";
 import { environment } from "../../environments/environment";
-import { Runtime } from "./api.types";
+import { Runtime, RuntimeResponse, Series } from "./api.types";
 
 @Injectable({
   providedIn: "root",
@@ -9,7 +10,56 @@ import { Runtime } from "./api.types";
 export class Api {
   constructor(private http: HttpClient) {}
 
-  getRuntime() {
-    return this.http.get<Runtime>(environment.baseUrl + "/api/runtime");
+  getRuntime(maxPoints: number, since?: string | null) {
+    // binary payload is mapped straight into typed arrays, without parsing any sample
+    const params = since ? { maxPoints: maxPoints, since: since, format: "binary" } : { maxPoints: maxPoints, format: "binary" };
+    return this.http
+      .get(environment.baseUrl + "/api/runtime", { params: params, responseType: "arraybuffer" })
+      .pipe(map((buffer) => decodeBinary(buffer)));
   }
+
+  getEvents(maxPoints: number, since?: string | null) {
+    // server pushes an event as soon as each cycle is collected, the stream fails on any error and it's up to the caller to retry
+    return new Observable<Runtime>((subscriber) => {
+      const params = new HttpParams({
+        fromObject: since ? { maxPoints: maxPoints, since: since, format: "columnar" } : { maxPoints: maxPoints, format: "columnar" },
+      });
+      const source = new EventSource(environment.baseUrl + "/api/events?" + params.toString());
+      source.addEventListener("runtime", (event) => subscriber.next(decodeColumnar(JSON.parse((event as MessageEvent).data))));
+      source.onerror = (event) => subscriber.error(event);
+      return () => source.close();
+    });
+  }
+}
+
+function decodeColumnar(response: RuntimeResponse): Runtime {
+  // timestamps are shared by datasets on the same grid, and converted once to milliseconds
+  const grids = response.columnar.grids!.map((grid) => Float64Array.from(grid, (s) => s * 1000));
+  const datasets: Series[] = response.columnar.datasets.map((dataset) => ({
+    timestamps: grids[dataset.grid],
+    columns: dataset.columns!.map((column) => Float64Array.from(column)),
+  }));
+  return { ...response, datasets: datasets };
+}
+
+function decodeBinary(buffer: ArrayBuffer): Runtime {
+  // layout: header length, json header, padding to 8 bytes, then grids and columns of every dataset, as little-endian doubles
+  const headerLength = new DataView(buffer).getInt32(0, true);
+  const response: RuntimeResponse = JSON.parse(new TextDecoder().decode(new Uint8Array(buffer, 4, headerLength)));
+  let offset = Math.ceil((4 + headerLength) / 8) * 8;
+  const sizes = response.columnar.sizes;
+  const grids = sizes.map((size) => {
+    const grid = new Float64Array(buffer, offset, size);
+    offset += size * 8;
+    return grid.map((s) => s * 1000);
+  });
+  const datasets: Series[] = response.columnar.datasets.map((dataset) => {
+    const columns: Float64Array[] = [];
+    for (let i = 0; i < dataset.width; i++) {
+      columns.push(new Float64Array(buffer, offset, sizes[dataset.grid]));
+      offset += sizes[dataset.grid] * 8;
+    }
+    return { timestamps: grids[dataset.grid], columns: columns };
+  });
+  return { ...response, datasets: datasets };
 }
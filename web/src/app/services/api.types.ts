@@ -6,11 +6,32 @@ export interface Runtime {
   collectElapsed: string | null;
   persistElapsed: string | null;
   reportElapsed: string | null;
-  datasets: [][][];
+  persistQueueDepth: number;
+  persistDroppedCycles: number;
+  lastTms: string | null;
+  retentionTms: string;
+  datasets: Series[];
+}
+
+// runtime as sent by the server in columnar or binary format, before decoding its datasets
+export interface RuntimeResponse extends Omit<Runtime, "datasets"> {
+  columnar: ColumnarDatasets;
+}
+
+export interface ColumnarDatasets {
+  sizes: number[];
+  grids?: number[][];
+  datasets: { grid: number; width: number; columns?: number[][] }[];
+}
+
+// timestamps in milliseconds, followed by one column for each dimension of the chart
+export interface Series {
+  timestamps: Float64Array;
+  columns: Float64Array[];
 }
 
 export interface Probe {
-  type: "LOAD" | "CPU" | "MEM" | "NET" | "DISK" | "ZFS" | "GPU";
+  type: "LOAD" | "CPU" | "CORES" | "MEM" | "NET" | "DISK" | "ZFS" | "GPU" | "SELF";
   size: "FULL" | "HALF";
   device: string | null;
   label: string | null;